@@ -0,0 +1,7 @@
+-- 为product表添加图片哈希字段：图片文件按 SHA-256 保存在图片存储目录，数据库只保存哈希
+-- 旧数据中 image_url 的 base64 图片可调用 POST /api/images/migrate 分批迁移（只写入哈希，保留原图），确认图片存储可靠后调用 POST /api/images/migrate/purge 置空 image_url
+-- MySQL
+ALTER TABLE product ADD COLUMN image_hash CHAR(64) NULL COMMENT '图片内容哈希(SHA-256)';
+
+-- PostgreSQL 版本
+-- ALTER TABLE product ADD COLUMN IF NOT EXISTS image_hash CHAR(64);
@@ -0,0 +1,6 @@
+-- 为product表添加库存预警值字段（为空时使用 stock.low-stock.default-threshold 默认预警值）
+-- MySQL
+ALTER TABLE product ADD COLUMN low_stock_threshold INT NULL COMMENT '库存预警值';
+
+-- PostgreSQL 版本
+-- ALTER TABLE product ADD COLUMN IF NOT EXISTS low_stock_threshold INTEGER;
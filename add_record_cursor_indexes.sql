@@ -0,0 +1,12 @@
+-- 出入库记录游标分页索引：列表按 (日期, ID) 倒序 seek，按商品筛选时使用带 product_id 前缀的索引
+-- MySQL
+CREATE INDEX idx_inbound_date_id ON inbound_record (in_date, id);
+CREATE INDEX idx_inbound_product_date_id ON inbound_record (product_id, in_date, id);
+CREATE INDEX idx_outbound_date_id ON outbound_record (out_date, id);
+CREATE INDEX idx_outbound_product_date_id ON outbound_record (product_id, out_date, id);
+
+-- PostgreSQL 版本（CONCURRENTLY 不锁表，不能在事务中执行）
+-- CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_inbound_date_id ON inbound_record (in_date, id);
+-- CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_inbound_product_date_id ON inbound_record (product_id, in_date, id);
+-- CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_outbound_date_id ON outbound_record (out_date, id);
+-- CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_outbound_product_date_id ON outbound_record (product_id, out_date, id);
@@ -0,0 +1,16 @@
+-- 为出入库记录表添加图片哈希字段：记录不再复制商品图片，只保存出入库时商品图片的哈希
+-- 旧记录 image_url 中复制的图片可调用 POST /api/images/migrate/records 在后台分批迁移（只写入哈希，保留原图），确认图片存储可靠后调用 POST /api/images/migrate/records/purge 置空 image_url
+-- MySQL
+ALTER TABLE inbound_record ADD COLUMN image_hash CHAR(64) NULL COMMENT '商品图片哈希(SHA-256)';
+ALTER TABLE outbound_record ADD COLUMN image_hash CHAR(64) NULL COMMENT '商品图片哈希(SHA-256)';
+
+-- 迁移完成后整理表，归还 image_url 占用的空间
+-- OPTIMIZE TABLE inbound_record;
+-- OPTIMIZE TABLE outbound_record;
+
+-- PostgreSQL 版本
+-- ALTER TABLE inbound_record ADD COLUMN IF NOT EXISTS image_hash CHAR(64);
+-- ALTER TABLE outbound_record ADD COLUMN IF NOT EXISTS image_hash CHAR(64);
+-- 迁移完成后（VACUUM FULL 会锁表，可在低峰期执行）
+-- VACUUM FULL inbound_record;
+-- VACUUM FULL outbound_record;
@@ -0,0 +1,24 @@
+-- 创建商品库存投影表（MySQL）
+-- 应用启动时会自动补建缺失的投影，也可带 --rebuild-stock-projection 参数或调用
+-- POST /api/stock/projection/rebuild 从出入库记录分批重建
+CREATE TABLE IF NOT EXISTS `product_stock` (
+  `product_id` bigint NOT NULL COMMENT '商品ID',
+  `total_inbound` int NOT NULL DEFAULT 0 COMMENT '累计入库数量',
+  `total_outbound` int NOT NULL DEFAULT 0 COMMENT '累计出库数量',
+  `current_stock` int NOT NULL DEFAULT 0 COMMENT '当前库存（初始库存+累计入库-累计出库）',
+  `stock_value` decimal(14,2) NOT NULL DEFAULT 0.00 COMMENT '库存价值',
+  `updated_at` datetime NULL DEFAULT CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`product_id`) USING BTREE,
+  INDEX `idx_product_stock_current`(`current_stock`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '商品库存投影表' ROW_FORMAT = Dynamic;
+
+-- PostgreSQL 版本
+-- CREATE TABLE IF NOT EXISTS product_stock (
+--     product_id BIGINT PRIMARY KEY,
+--     total_inbound INTEGER NOT NULL DEFAULT 0,
+--     total_outbound INTEGER NOT NULL DEFAULT 0,
+--     current_stock INTEGER NOT NULL DEFAULT 0,
+--     stock_value DECIMAL(14,2) NOT NULL DEFAULT 0.00,
+--     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+-- );
+-- CREATE INDEX IF NOT EXISTS idx_product_stock_current ON product_stock(current_stock);
@@ -0,0 +1,26 @@
+-- 创建库存快照表（MySQL）
+-- 定时任务按 stock.snapshot.period-days 周期生成快照，保存每个商品截止快照日期（含）的累计出入库数量；
+-- 修改或删除历史出入库记录时同步回填之后的快照
+CREATE TABLE IF NOT EXISTS `stock_snapshot` (
+  `id` bigint NOT NULL AUTO_INCREMENT COMMENT '快照ID',
+  `product_id` bigint NOT NULL COMMENT '商品ID',
+  `snapshot_date` date NOT NULL COMMENT '快照日期',
+  `total_inbound` int NOT NULL DEFAULT 0 COMMENT '截止快照日期的累计入库数量',
+  `total_outbound` int NOT NULL DEFAULT 0 COMMENT '截止快照日期的累计出库数量',
+  `created_at` datetime NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_stock_snapshot_product_date`(`product_id`, `snapshot_date`) USING BTREE,
+  INDEX `idx_stock_snapshot_date`(`snapshot_date`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '库存快照表' ROW_FORMAT = Dynamic;
+
+-- PostgreSQL 版本
+-- CREATE TABLE IF NOT EXISTS stock_snapshot (
+--     id BIGSERIAL PRIMARY KEY,
+--     product_id BIGINT NOT NULL,
+--     snapshot_date DATE NOT NULL,
+--     total_inbound INTEGER NOT NULL DEFAULT 0,
+--     total_outbound INTEGER NOT NULL DEFAULT 0,
+--     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+--     CONSTRAINT uk_stock_snapshot_product_date UNIQUE (product_id, snapshot_date)
+-- );
+-- CREATE INDEX IF NOT EXISTS idx_stock_snapshot_date ON stock_snapshot(snapshot_date);
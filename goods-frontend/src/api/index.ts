@@ -190,6 +190,11 @@ export const productAPI = {
     return request
   },
   
+  // 商品输入提示（名称、拼音首字母、规格前缀匹配，服务端内存索引）
+  suggestProducts: (q: string, limit = 20) => {
+    return api.get('/products/suggest', { params: { q, limit } })
+  },
+  
   // 根据ID获取商品详情
   getProductById: (id: number) => {
     return api.get(`/product/${id}`)
@@ -210,6 +215,17 @@ export const productAPI = {
     return api.post('/product', data)
   },
   
+  // 上传商品图片（multipart，服务端边接收边校验并保存，商品只保存图片引用）
+  uploadProductImage: (id: number, file: File) => {
+    const formData = new FormData()
+    formData.append('file', file)
+    return api.post(`/product/${id}/image`, formData, {
+      headers: {
+        'Content-Type': 'multipart/form-data'
+      }
+    })
+  },
+  
   // 删除商品
   deleteProduct: (id: number) => {
     return api.delete(`/product/${id}`)
@@ -427,4 +443,13 @@ export const healthAPI = {
   }
 }
 
+// 图片地址：后端返回的相对地址（/api/images/...）按接口地址补全域名，其他地址原样返回
+export const resolveImageUrl = (url?: string | null): string => {
+  if (!url || !url.startsWith('/api/')) {
+    return url || ''
+  }
+  const base = (api.defaults.baseURL || '').replace(/\/api\/?$/, '')
+  return base + url
+}
+
 export default api
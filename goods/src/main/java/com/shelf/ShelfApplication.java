@@ -2,11 +2,13 @@ package com.shelf;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 货架商品管理系统主启动类
  */
 @SpringBootApplication
+@EnableScheduling
 public class ShelfApplication {
 
     public static void main(String[] args) {
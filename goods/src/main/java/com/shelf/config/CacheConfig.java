@@ -0,0 +1,92 @@
+package com.shelf.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Page;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存配置
+ * 每个命名缓存使用独立的 Caffeine 规格（容量/权重、过期时间），统一开启命中率统计。
+ * 缓存写入和清除延迟到事务提交之后执行，避免事务未提交时被并发读取重新填充旧数据。
+ */
+@Slf4j
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String STATS = "stats";
+    public static final String PRODUCTS = "products";
+    public static final String PRODUCT_BY_ID = "product-by-id";
+    public static final String HISTORY = "history";
+    public static final String RECORD_COUNTS = "record-counts";
+
+    @Value("${cache.spec.stats:maximumSize=100,expireAfterWrite=30s}")
+    private String statsSpec;
+
+    @Value("${cache.spec.products:maximumSize=10,expireAfterWrite=5m}")
+    private String productsSpec;
+
+    @Value("${cache.spec.product-by-id:maximumSize=1000,expireAfterAccess=10m}")
+    private String productByIdSpec;
+
+    @Value("${cache.spec.history:maximumWeight=200000,expireAfterWrite=10m}")
+    private String historySpec;
+
+    @Value("${cache.spec.record-counts:maximumSize=1000,expireAfterWrite=30s}")
+    private String recordCountsSpec;
+
+    @Bean
+    public CacheManager cacheManager() {
+        List<CaffeineCache> caches = new ArrayList<>();
+        for (Map.Entry<String, String> entry : Map.of(
+                STATS, statsSpec,
+                PRODUCTS, productsSpec,
+                PRODUCT_BY_ID, productByIdSpec,
+                HISTORY, historySpec,
+                RECORD_COUNTS, recordCountsSpec).entrySet()) {
+            caches.add(buildCache(entry.getKey(), entry.getValue()));
+        }
+
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(caches);
+        cacheManager.initializeCaches();
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+
+    /**
+     * 按规格字符串创建缓存；规格中配置了 maximumWeight 时按集合元素个数计算权重
+     */
+    private CaffeineCache buildCache(String name, String spec) {
+        CaffeineSpec caffeineSpec = CaffeineSpec.parse(spec);
+        Caffeine<Object, Object> builder = Caffeine.from(caffeineSpec).recordStats();
+        if (spec.contains("maximumWeight")) {
+            builder.weigher((Object key, Object value) -> weigh(value));
+        }
+        log.info("初始化缓存: {}，规格: {}", name, spec);
+        return new CaffeineCache(name, builder.build());
+    }
+
+    private static int weigh(Object value) {
+        if (value instanceof Collection<?> collection) {
+            return collection.size() + 1;
+        }
+        if (value instanceof Page<?> page) {
+            return page.getNumberOfElements() + 1;
+        }
+        return 1;
+    }
+}
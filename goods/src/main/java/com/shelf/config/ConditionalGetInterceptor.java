@@ -0,0 +1,107 @@
+package com.shelf.config;
+
+import com.shelf.dto.ApiResponse;
+import com.shelf.service.DataVersionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 条件 GET 处理
+ * 标注了 {@link DataVersioned} 的查询接口按数据版本号生成弱 ETag：
+ * 请求头 If-None-Match 与当前 ETag 一致时在进入控制器之前直接返回 304，不访问数据库；
+ * 否则在成功响应上写出 ETag，失败响应和部分失败的响应（见 {@link #skipEtag}）不带 ETag，避免客户端缓存错误结果。
+ */
+@RestControllerAdvice
+@RequiredArgsConstructor
+public class ConditionalGetInterceptor implements HandlerInterceptor, ResponseBodyAdvice<Object> {
+
+    private static final String ETAG_ATTRIBUTE = ConditionalGetInterceptor.class.getName() + ".etag";
+
+    private final DataVersionService dataVersionService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)
+                || !("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod()))) {
+            return true;
+        }
+        DataVersioned dataVersioned = handlerMethod.getMethodAnnotation(DataVersioned.class);
+        if (dataVersioned == null) {
+            return true;
+        }
+
+        // ETag 须在查询数据之前取得：查询期间有提交时，宁可让客户端多取一次也不能把旧数据标成新版本
+        String etag = dataVersionService.etag(dataVersioned.value(), dataVersioned.daily());
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            return false;
+        }
+        request.setAttribute(ETAG_ATTRIBUTE, etag);
+        return true;
+    }
+
+    /**
+     * 本次响应不写出 ETag：控制器在部分数据获取失败、以默认值代替时调用，避免客户端按版本号缓存不完整的结果
+     */
+    public static void skipEtag(HttpServletRequest request) {
+        request.removeAttribute(ETAG_ATTRIBUTE);
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.hasMethodAnnotation(DataVersioned.class);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)) {
+            return body;
+        }
+        Object etag = servletRequest.getServletRequest().getAttribute(ETAG_ATTRIBUTE);
+        if (etag == null || body == null || (body instanceof ApiResponse<?> apiResponse
+                && !Integer.valueOf(200).equals(apiResponse.getCode()))) {
+            return body;
+        }
+        response.getHeaders().setETag((String) etag);
+        response.getHeaders().setCacheControl(CacheControl.noCache());
+        return body;
+    }
+
+    /**
+     * 弱比较：忽略 W/ 前缀，支持逗号分隔的多个值和 *
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        String expected = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value) || stripWeak(value).equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -41,7 +41,8 @@ public class CorsConfig {
                 "accept", 
                 "Origin", 
                 "Access-Control-Request-Method", 
-                "Access-Control-Request-Headers"
+                "Access-Control-Request-Headers",
+                "ETag"
         ));
         
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -0,0 +1,22 @@
+package com.shelf.config;
+
+import com.shelf.service.DataVersionService;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记查询接口依赖的数据域，由 {@link ConditionalGetInterceptor} 按数据版本号处理条件请求
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DataVersioned {
+
+    /** 接口结果依赖的数据域 */
+    DataVersionService.Domain[] value();
+
+    /** 结果是否与当天日期有关（如今日出库），为true时跨天后 ETag 随之变化 */
+    boolean daily() default false;
+}
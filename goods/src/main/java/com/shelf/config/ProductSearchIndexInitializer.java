@@ -0,0 +1,31 @@
+package com.shelf.config;
+
+import com.shelf.service.ProductSearchIndexService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品搜索索引初始化，在启动预热之前执行
+ */
+@Slf4j
+@Component
+@Order(StockProjectionInitializer.ORDER)
+@RequiredArgsConstructor
+public class ProductSearchIndexInitializer implements ApplicationRunner {
+
+    private final ProductSearchIndexService productSearchIndexService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            productSearchIndexService.reload();
+        } catch (Exception e) {
+            // 索引加载失败不阻止应用启动，搜索回退到数据库模糊查询
+            log.error("商品搜索索引加载失败", e);
+        }
+    }
+}
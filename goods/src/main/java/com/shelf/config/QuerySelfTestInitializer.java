@@ -0,0 +1,88 @@
+package com.shelf.config;
+
+import com.shelf.repository.InboundRecordFilter;
+import com.shelf.repository.InboundRecordRepository;
+import com.shelf.repository.OutboundRecordFilter;
+import com.shelf.repository.OutboundRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 列表查询启动自检：出入库记录的列表（含全部可排序字段）、计数、游标查询及其关联商品的版本，按不带条件、带全部条件（含商品名称关联）
+ * 和按商品ID列表三种条件各执行一次，方言生成的SQL与实际数据库不兼容时在启动阶段暴露，而不是在用户第一次查询时才报错。
+ * 默认自检失败只记录错误日志；fail-fast 设为 true 时自检失败则启动失败。
+ */
+@Slf4j
+@Component
+@Order(StockProjectionInitializer.ORDER - 1)
+@RequiredArgsConstructor
+public class QuerySelfTestInitializer implements ApplicationRunner {
+
+    private final InboundRecordRepository inboundRecordRepository;
+    private final OutboundRecordRepository outboundRecordRepository;
+    private final SqlDialect sqlDialect;
+
+    @Value("${query.self-test.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.self-test.fail-fast:false}")
+    private boolean failFast;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            runQueries();
+            log.info("列表查询自检通过，方言: {}，耗时 {} ms", sqlDialect, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            if (failFast) {
+                throw new RuntimeException("列表查询自检失败，方言: " + sqlDialect + "，原因: " + e.getMessage(), e);
+            }
+            log.error("列表查询自检失败，方言: {}", sqlDialect, e);
+        }
+    }
+
+    private void runQueries() {
+        LocalDate today = LocalDate.now();
+        List<Long> productIds = List.of(0L);
+        List<InboundRecordFilter> inboundFilters = List.of(
+                new InboundRecordFilter(),
+                new InboundRecordFilter(0L, "自检", null, today, today),
+                new InboundRecordFilter(null, null, productIds, today, today));
+        for (InboundRecordFilter filter : inboundFilters) {
+            inboundRecordRepository.findByFilter(filter, PageRequest.of(0, 1));
+            inboundRecordRepository.findByFilter(filter,
+                    PageRequest.of(0, 1, Sort.by(InboundRecordRepository.SORT_COLUMNS.keySet().toArray(new String[0]))));
+            inboundRecordRepository.countByFilter(filter);
+            inboundRecordRepository.findAfterCursor(filter, today, Long.MAX_VALUE, 1);
+            inboundRecordRepository.findWithProductByFilter(filter, PageRequest.of(0, 1));
+            inboundRecordRepository.findWithProductAfterCursor(filter, today, Long.MAX_VALUE, 1);
+        }
+        List<OutboundRecordFilter> outboundFilters = List.of(
+                new OutboundRecordFilter(),
+                new OutboundRecordFilter(0L, "自检", null, "自检", 0, today, today),
+                new OutboundRecordFilter(null, null, productIds, "自检", 0, today, today));
+        for (OutboundRecordFilter filter : outboundFilters) {
+            outboundRecordRepository.findByFilter(filter, PageRequest.of(0, 1));
+            outboundRecordRepository.findByFilter(filter,
+                    PageRequest.of(0, 1, Sort.by(OutboundRecordRepository.SORT_COLUMNS.keySet().toArray(new String[0]))));
+            outboundRecordRepository.countByFilter(filter);
+            outboundRecordRepository.findAfterCursor(filter, today, Long.MAX_VALUE, 1);
+            outboundRecordRepository.findWithProductByFilter(filter, PageRequest.of(0, 1));
+            outboundRecordRepository.findWithProductAfterCursor(filter, today, Long.MAX_VALUE, 1);
+        }
+    }
+}
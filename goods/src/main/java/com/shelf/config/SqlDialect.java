@@ -0,0 +1,109 @@
+package com.shelf.config;
+
+/**
+ * 原生SQL方言
+ * 启动时按数据库产品名称确定一次（见 {@link SqlDialectConfig}），出入库记录查询据此生成对应的SQL，
+ * 不再先执行一种写法、失败后再换另一种写法。
+ */
+public enum SqlDialect {
+
+    MYSQL {
+        @Override
+        public String param(String name, String sqlType) {
+            return ":" + name;
+        }
+
+        @Override
+        public String containsIgnoreCase(String column, String param) {
+            // 表使用 utf8mb4_unicode_ci 排序规则，LIKE 本身不区分大小写
+            return column + " LIKE CONCAT('%', :" + param + ", '%') ESCAPE '!'";
+        }
+
+        @Override
+        public String insertIfAbsent(String table, String columns, String values) {
+            return "INSERT IGNORE INTO " + table + " (" + columns + ") VALUES (" + values + ")";
+        }
+    },
+
+    POSTGRESQL {
+        @Override
+        public String containsIgnoreCase(String column, String param) {
+            return column + " ILIKE '%' || " + param(param, "VARCHAR") + " || '%' ESCAPE '!'";
+        }
+
+        @Override
+        public String seekBefore(String dateColumn, String idColumn, String dateParam, String idParam) {
+            // 行值比较直接对应 (日期, id) 索引上的一段范围
+            return "(" + dateColumn + ", " + idColumn + ") < (:" + dateParam + ", :" + idParam + ")";
+        }
+    },
+
+    /**
+     * 其他数据库按标准SQL处理
+     */
+    STANDARD;
+
+    /**
+     * LIKE 转义字符（不用反斜杠：MySQL 与 PostgreSQL 字符串字面量中反斜杠的含义不同）
+     */
+    public static final char LIKE_ESCAPE = '!';
+
+    /**
+     * 可能为 NULL 的参数占位符，sqlType 为 BIGINT、INTEGER、DATE、VARCHAR 等标准类型名
+     * 参数为 NULL 时 PostgreSQL 等数据库无法推断类型，默认显式转换
+     */
+    public String param(String name, String sqlType) {
+        return "CAST(:" + name + " AS " + sqlType + ")";
+    }
+
+    /**
+     * 不区分大小写的包含匹配条件，参数须先经 {@link #escapeLike} 转义
+     */
+    public String containsIgnoreCase(String column, String param) {
+        return "LOWER(" + column + ") LIKE LOWER('%' || " + param(param, "VARCHAR") + " || '%') ESCAPE '!'";
+    }
+
+    /**
+     * 按 (日期, id) 倒序游标翻页的条件：排在游标 (dateParam, idParam) 之后的行，默认展开为 OR 写法
+     */
+    public String seekBefore(String dateColumn, String idColumn, String dateParam, String idParam) {
+        return "(" + dateColumn + " < :" + dateParam + " OR (" + dateColumn + " = :" + dateParam +
+                " AND " + idColumn + " < :" + idParam + "))";
+    }
+
+    /**
+     * 插入一行，主键已存在（含其他事务尚未提交的插入）时等待其结束后不做任何操作，影响行数为0
+     */
+    public String insertIfAbsent(String table, String columns, String values) {
+        return "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ") ON CONFLICT DO NOTHING";
+    }
+
+    /**
+     * 转义 LIKE 参数中的 %、_ 和转义字符本身，关键词按字面匹配（与内存搜索索引的包含匹配一致），null 原样返回
+     */
+    public static String escapeLike(String value) {
+        if (value == null) {
+            return null;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * 按 JDBC 元数据中的数据库产品名称确定方言
+     */
+    public static SqlDialect of(String databaseProductName) {
+        String name = databaseProductName != null ? databaseProductName.toLowerCase() : "";
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        }
+        return name.contains("postgresql") ? POSTGRESQL : STANDARD;
+    }
+}
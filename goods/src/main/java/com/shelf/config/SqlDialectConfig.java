@@ -0,0 +1,29 @@
+package com.shelf.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 数据库方言配置：启动时读取一次连接元数据
+ */
+@Slf4j
+@Configuration
+public class SqlDialectConfig {
+
+    @Bean
+    public SqlDialect sqlDialect(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            String productName = connection.getMetaData().getDatabaseProductName();
+            SqlDialect dialect = SqlDialect.of(productName);
+            log.info("数据库: {}，原生SQL方言: {}", productName, dialect);
+            return dialect;
+        } catch (SQLException e) {
+            throw new RuntimeException("读取数据库类型失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.shelf.config;
+
+import com.shelf.service.ProductStockService;
+import com.shelf.service.StockIndexService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * 库存投影初始化
+ * 启动参数带 --rebuild-stock-projection 时强制全量重建；否则仅在投影缺失时补建。
+ * 投影就绪后加载内存库存索引。
+ */
+@Slf4j
+@Component
+@Order(StockProjectionInitializer.ORDER)
+@RequiredArgsConstructor
+public class StockProjectionInitializer implements ApplicationRunner {
+
+    public static final int ORDER = 0;
+
+    private static final String REBUILD_OPTION = "rebuild-stock-projection";
+
+    private final ProductStockService productStockService;
+    private final StockIndexService stockIndexService;
+
+    @Value("${stock.projection.chunk-size:500}")
+    private int chunkSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            if (args.containsOption(REBUILD_OPTION)) {
+                log.info("收到重建参数，开始全量重建库存投影");
+                productStockService.rebuild(chunkSize);
+            } else if (productStockService.isIncomplete()) {
+                log.info("库存投影不完整，开始补建");
+                productStockService.rebuild(chunkSize);
+            } else {
+                stockIndexService.reload();
+            }
+        } catch (Exception e) {
+            // 投影重建失败不阻止应用启动，可通过接口重新触发
+            log.error("库存投影初始化失败", e);
+        }
+    }
+}
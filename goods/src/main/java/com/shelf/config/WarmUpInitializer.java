@@ -0,0 +1,24 @@
+package com.shelf.config;
+
+import com.shelf.service.WarmUpService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动预热，在库存投影初始化之后执行
+ */
+@Component
+@Order(StockProjectionInitializer.ORDER + 1)
+@RequiredArgsConstructor
+public class WarmUpInitializer implements ApplicationRunner {
+
+    private final WarmUpService warmUpService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        warmUpService.warmUp();
+    }
+}
@@ -0,0 +1,71 @@
+package com.shelf.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.shelf.dto.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 缓存管理控制器
+ */
+@RestController
+@RequestMapping("/api/admin/cache")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class CacheController {
+
+    private final CacheManager cacheManager;
+
+    /**
+     * 查询各缓存的命中、未命中、淘汰次数
+     */
+    @GetMapping("/stats")
+    public ApiResponse<Map<String, Map<String, Object>>> getCacheStats() {
+        try {
+            Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+            for (String name : new TreeSet<>(cacheManager.getCacheNames())) {
+                Cache cache = cacheManager.getCache(name);
+                if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+                    result.put(name, toMap(nativeCache.stats(), nativeCache.estimatedSize()));
+                }
+            }
+            return ApiResponse.success(result);
+        } catch (Exception e) {
+            return ApiResponse.error("获取缓存统计失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 清空指定缓存
+     */
+    @DeleteMapping("/{name}")
+    public ApiResponse<String> clearCache(@PathVariable String name) {
+        try {
+            Cache cache = cacheManager.getCache(name);
+            if (cache == null) {
+                return ApiResponse.badRequest("缓存不存在: " + name);
+            }
+            cache.clear();
+            return ApiResponse.success("缓存已清空", name);
+        } catch (Exception e) {
+            return ApiResponse.error("清空缓存失败: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> toMap(CacheStats stats, long size) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("size", size);
+        data.put("hitCount", stats.hitCount());
+        data.put("missCount", stats.missCount());
+        data.put("hitRate", stats.hitRate());
+        data.put("evictionCount", stats.evictionCount());
+        data.put("evictionWeight", stats.evictionWeight());
+        return data;
+    }
+}
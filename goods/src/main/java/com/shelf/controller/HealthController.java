@@ -1,6 +1,10 @@
 package com.shelf.controller;
 
 import com.shelf.dto.ApiResponse;
+import com.shelf.service.WarmUpService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -15,9 +19,12 @@ import java.util.Map;
  */
 @RestController
 @RequestMapping("/api")
+@RequiredArgsConstructor
 @CrossOrigin(origins = "*")
 public class HealthController {
 
+    private final WarmUpService warmUpService;
+
     /**
      * 健康检查接口
      */
@@ -31,6 +38,27 @@ public class HealthController {
         return ApiResponse.success("系统运行正常", data);
     }
 
+    /**
+     * 就绪检查接口：启动预热完成前或关键预热阶段失败时返回503，就绪后返回200，同时返回各预热阶段耗时和失败的关键阶段
+     */
+    @GetMapping("/health/ready")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> ready() {
+        Map<String, Object> data = new HashMap<>();
+        boolean ready = warmUpService.isReady();
+        boolean failed = !ready && warmUpService.isFinished();
+        data.put("status", ready ? "UP" : failed ? "DEGRADED" : "WARMING_UP");
+        data.put("startedAt", warmUpService.getStartedAt());
+        data.put("finishedAt", warmUpService.getFinishedAt());
+        data.put("stages", warmUpService.getStages());
+        data.put("failedStages", warmUpService.failedCriticalStages());
+        if (!ready) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ApiResponse<>(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                            failed ? "关键预热阶段失败，重试中" : "系统预热中", data));
+        }
+        return ResponseEntity.ok(ApiResponse.success("系统已就绪", data));
+    }
+
     /**
      * API测试接口
      */
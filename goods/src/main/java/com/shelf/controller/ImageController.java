@@ -0,0 +1,178 @@
+package com.shelf.controller;
+
+import com.shelf.dto.ApiResponse;
+import com.shelf.service.ImageMigrationService;
+import com.shelf.service.ImageStorageService;
+import com.shelf.service.ImageVariantService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片控制器
+ */
+@RestController
+@RequestMapping("/api/images")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class ImageController {
+
+    /** 按内容寻址的图片永不变化 */
+    private static final String IMMUTABLE_CACHE_CONTROL =
+            CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+
+    /** Tomcat sendfile 相关请求属性 */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+    private final ImageMigrationService imageMigrationService;
+
+    /**
+     * 按哈希读取图片
+     * 内容不会变化，返回一年的不可变缓存头；支持 Tomcat sendfile 时由容器直接发送文件，否则用 FileChannel.transferTo 写出
+     */
+    @GetMapping("/{hash}")
+    public void getImage(@PathVariable String hash, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        Path path = imageStorageService.resolve(hash);
+        if (path == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        sendImage(path, "\"" + hash + "\"", IMMUTABLE_CACHE_CONTROL, request, response);
+    }
+
+    /**
+     * 按哈希读取图片尺寸变体（thumb、medium）
+     * 变体尚未生成时提交生成任务并返回原图，原图不缓存，下次请求重新验证后即可拿到变体
+     */
+    @GetMapping("/{hash}/{variant}")
+    public void getImageVariant(@PathVariable String hash, @PathVariable String variant,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ImageVariantService.Variant imageVariant = ImageVariantService.Variant.fromPath(variant);
+        Path original = imageStorageService.resolve(hash);
+        if (imageVariant == null || original == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path path = imageVariantService.resolve(hash, imageVariant);
+        if (path != null) {
+            sendImage(path, "\"" + hash + "-" + variant + "\"", IMMUTABLE_CACHE_CONTROL, request, response);
+            return;
+        }
+        imageVariantService.generateAsync(hash);
+        sendImage(original, "\"" + hash + "\"", CacheControl.noCache().getHeaderValue(), request, response);
+    }
+
+    private void sendImage(Path path, String etag, String cacheControl, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long size = Files.size(path);
+        response.setContentType(imageStorageService.contentType(path));
+        response.setContentLengthLong(size);
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, output);
+            }
+        }
+    }
+
+    /**
+     * 把商品表中以 base64 保存的旧图片分批迁移到图片存储
+     */
+    @PostMapping("/migrate")
+    public ApiResponse<Integer> migrateImages(@RequestParam(defaultValue = "50") int chunkSize) {
+        try {
+            int migrated = imageMigrationService.migrateProductImages(chunkSize);
+            return ApiResponse.success("商品图片迁移完成", migrated);
+        } catch (Exception e) {
+            return ApiResponse.error("商品图片迁移失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 清理已迁移商品保留的 base64 原图（图片文件校验通过后才置空），确认图片存储目录可靠后再调用
+     */
+    @PostMapping("/migrate/purge")
+    public ApiResponse<Integer> purgeMigratedImages(@RequestParam(defaultValue = "50") int chunkSize) {
+        try {
+            int purged = imageMigrationService.purgeMigratedProductImages(chunkSize);
+            return ApiResponse.success("商品迁移原图清理完成", purged);
+        } catch (Exception e) {
+            return ApiResponse.error("商品迁移原图清理失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询最近一次出入库记录图片迁移或清理任务的进度
+     */
+    @GetMapping("/migrate/records")
+    public ApiResponse<Map<String, Object>> getRecordImageMigrationStatus() {
+        return ApiResponse.success(imageMigrationService.getRecordJobStatus());
+    }
+
+    /**
+     * 在后台迁移出入库记录中复制的图片，立即返回，进度通过 GET /api/images/migrate/records 查询
+     */
+    @PostMapping("/migrate/records")
+    public ApiResponse<Boolean> migrateRecordImages(@RequestParam(defaultValue = "100") int chunkSize) {
+        try {
+            if (!imageMigrationService.startRecordImageMigration(chunkSize)) {
+                return ApiResponse.badRequest("出入库记录图片迁移正在执行");
+            }
+            return ApiResponse.success("出入库记录图片迁移已在后台开始", true);
+        } catch (Exception e) {
+            return ApiResponse.error("启动出入库记录图片迁移失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 在后台清理已迁移出入库记录中复制的图片（图片文件校验通过后才置空），立即返回，进度通过 GET /api/images/migrate/records 查询
+     */
+    @PostMapping("/migrate/records/purge")
+    public ApiResponse<Boolean> purgeMigratedRecordImages(@RequestParam(defaultValue = "100") int chunkSize) {
+        try {
+            if (!imageMigrationService.startRecordImagePurge(chunkSize)) {
+                return ApiResponse.badRequest("出入库记录图片迁移或清理正在执行");
+            }
+            return ApiResponse.success("出入库记录迁移原图清理已在后台开始", true);
+        } catch (Exception e) {
+            return ApiResponse.error("启动出入库记录迁移原图清理失败: " + e.getMessage());
+        }
+    }
+}
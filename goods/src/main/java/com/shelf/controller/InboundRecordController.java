@@ -1,13 +1,16 @@
 package com.shelf.controller;
 
 import com.shelf.dto.ApiResponse;
+import com.shelf.dto.CursorResponse;
 import com.shelf.dto.InboundRecordDTO;
 import com.shelf.dto.PageResponse;
 import com.shelf.service.InboundRecordService;
+import com.shelf.util.FieldSelection;
+import com.shelf.util.RecordCursor;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
@@ -24,29 +27,17 @@ import java.util.List;
 @CrossOrigin(origins = "*")
 public class InboundRecordController {
 
-    private final InboundRecordService inboundRecordService;
+    /** 游标分页每页最多返回的记录数 */
+    private static final int MAX_CURSOR_SIZE = 200;
 
-    /**
-     * 将Java字段名映射为数据库列名
-     */
-    private String mapFieldToColumn(String fieldName) {
-        switch (fieldName) {
-            case "createdAt":
-                return "created_at";
-            case "inDate":
-                return "in_date";
-            case "productId":
-                return "product_id";
-            default:
-                return fieldName;
-        }
-    }
+    private final InboundRecordService inboundRecordService;
 
     /**
-     * 分页查询入库记录
+     * 分页查询入库记录，fields 指定返回的字段（逗号分隔的属性名，默认全部）
+     * withTotal=false 时不查询总数（只返回是否最后一页）；estimateTotal=true 时无筛选条件的总数使用数据库统计估算
      */
     @GetMapping("/inbounds")
-    public ApiResponse<PageResponse<InboundRecordDTO>> getInboundRecords(
+    public ApiResponse<PageResponse<Object>> getInboundRecords(
             @RequestParam(required = false) Long productId,
             @RequestParam(required = false) String productName,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
@@ -54,27 +45,71 @@ public class InboundRecordController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sort,
-            @RequestParam(defaultValue = "desc") String direction) {
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean estimateTotal) {
         
         try {
-            // 字段名映射：将Java字段名转换为数据库列名
-            String dbColumnName = mapFieldToColumn(sort);
+            FieldSelection selection = FieldSelection.of(fields, InboundRecordDTO.class);
+            if (!selection.getUnsupported().isEmpty()) {
+                return ApiResponse.badRequest("不支持的字段: " + String.join(",", selection.getUnsupported()));
+            }
+            // 排序字段只接受白名单中有索引的列
+            if (!inboundRecordService.isSortable(sort)) {
+                return ApiResponse.badRequest("不支持的排序字段: " + sort);
+            }
             
             Sort.Direction sortDirection = "asc".equalsIgnoreCase(direction) ? 
                     Sort.Direction.ASC : Sort.Direction.DESC;
-            Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, dbColumnName));
+            Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
             
             // 如果有商品名称搜索，使用支持商品名称的查询方法
-            Page<InboundRecordDTO> records;
+            Slice<InboundRecordDTO> records;
             if (productName != null && !productName.trim().isEmpty()) {
                 records = inboundRecordService.getInboundRecords(
-                        productId, productName, startDate, endDate, pageable);
+                        productId, productName, startDate, endDate, pageable, selection);
             } else {
                 records = inboundRecordService.getInboundRecords(
-                        productId, startDate, endDate, pageable);
+                        productId, startDate, endDate, pageable, selection);
             }
             
-            return ApiResponse.success(PageResponse.of(records));
+            Long total = withTotal ? inboundRecordService.countInboundRecords(
+                    productId, productName, startDate, endDate, estimateTotal) : null;
+            return ApiResponse.success(PageResponse.of(selection.apply(records), total));
+        } catch (Exception e) {
+            return ApiResponse.error("查询入库记录失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 游标分页查询入库记录（after 为上一页返回的 nextCursor，第一页传空值），按入库日期、ID倒序，不返回总数
+     */
+    @GetMapping(value = "/inbounds", params = "after")
+    public ApiResponse<CursorResponse<Object>> getInboundRecordsAfter(
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) String productName,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String fields) {
+        try {
+            FieldSelection selection = FieldSelection.of(fields, InboundRecordDTO.class);
+            if (!selection.getUnsupported().isEmpty()) {
+                return ApiResponse.badRequest("不支持的字段: " + String.join(",", selection.getUnsupported()));
+            }
+            RecordCursor cursor = RecordCursor.decode(after);
+            if (cursor == null) {
+                return ApiResponse.badRequest("分页游标无效");
+            }
+            if (size < 1 || size > MAX_CURSOR_SIZE) {
+                return ApiResponse.badRequest("每页数量必须在1到" + MAX_CURSOR_SIZE + "之间");
+            }
+            CursorResponse<InboundRecordDTO> records = inboundRecordService.getInboundRecordsAfter(
+                    productId, productName, startDate, endDate, cursor, size, selection);
+            return ApiResponse.success(new CursorResponse<>(selection.apply(records.getContent()),
+                    records.getSize(), records.getHasNext(), records.getNextCursor()));
         } catch (Exception e) {
             return ApiResponse.error("查询入库记录失败: " + e.getMessage());
         }
@@ -1,18 +1,26 @@
 package com.shelf.controller;
 
+import com.shelf.config.DataVersioned;
 import com.shelf.dto.ApiResponse;
 import com.shelf.dto.PageResponse;
 import com.shelf.dto.ProductDTO;
+import com.shelf.dto.ProductSuggestionDTO;
 import com.shelf.service.ProductService;
+import com.shelf.util.FieldSelection;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.List;
 
+import static com.shelf.service.DataVersionService.Domain.*;
+
 /**
  * 商品控制器
  */
@@ -22,49 +30,83 @@ import java.util.List;
 @CrossOrigin(origins = "*")
 public class ProductController {
 
+    /** 输入提示单次最多返回的商品数 */
+    private static final int MAX_SUGGEST_LIMIT = 50;
+
     private final ProductService productService;
 
     /**
-     * 分页查询商品列表
+     * 分页查询商品列表，fields 指定返回的字段（逗号分隔的属性名，默认全部）
      */
     @GetMapping("/products")
-    public ApiResponse<PageResponse<ProductDTO>> getProducts(
+    @DataVersioned(PRODUCTS)
+    public ApiResponse<PageResponse<Object>> getProducts(
             @RequestParam(required = false) String name,
             @RequestParam(required = false) String spec,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sort,
-            @RequestParam(defaultValue = "desc") String direction) {
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam(required = false) String fields) {
         
         try {
+            FieldSelection selection = FieldSelection.of(fields, ProductDTO.class);
+            if (!selection.getUnsupported().isEmpty()) {
+                return ApiResponse.badRequest("不支持的字段: " + String.join(",", selection.getUnsupported()));
+            }
             Sort.Direction sortDirection = "asc".equalsIgnoreCase(direction) ? 
                     Sort.Direction.ASC : Sort.Direction.DESC;
             Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
             
-            Page<ProductDTO> products = productService.getProducts(name, spec, pageable);
-            return ApiResponse.success(PageResponse.of(products));
+            Page<ProductDTO> products = productService.getProducts(name, spec, pageable, selection);
+            return ApiResponse.success(PageResponse.of(selection.apply(products)));
         } catch (Exception e) {
             return ApiResponse.error("查询商品列表失败: " + e.getMessage());
         }
     }
 
     /**
-     * 获取所有商品（不分页，用于导出）
+     * 获取所有商品（不分页，用于导出），fields 指定返回的字段
      */
     @GetMapping("/products/all")
-    public ApiResponse<List<ProductDTO>> getAllProducts() {
+    @DataVersioned(PRODUCTS)
+    public ApiResponse<List<Object>> getAllProducts(@RequestParam(required = false) String fields) {
         try {
+            FieldSelection selection = FieldSelection.of(fields, ProductDTO.class);
+            if (!selection.getUnsupported().isEmpty()) {
+                return ApiResponse.badRequest("不支持的字段: " + String.join(",", selection.getUnsupported()));
+            }
+            // 全量列表整体缓存，字段选择只作用于序列化
             List<ProductDTO> products = productService.getAllProducts();
-            return ApiResponse.success(products);
+            return ApiResponse.success(selection.apply(products));
         } catch (Exception e) {
             return ApiResponse.error("获取商品列表失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 商品输入提示：按名称、拼音首字母、规格前缀匹配，返回前 limit 个商品
+     */
+    @GetMapping("/products/suggest")
+    @DataVersioned(PRODUCTS)
+    public ApiResponse<List<ProductSuggestionDTO>> suggestProducts(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            if (limit < 1 || limit > MAX_SUGGEST_LIMIT) {
+                return ApiResponse.badRequest("提示数量必须在1到" + MAX_SUGGEST_LIMIT + "之间");
+            }
+            return ApiResponse.success(productService.suggestProducts(q, limit));
+        } catch (Exception e) {
+            return ApiResponse.error("获取商品提示失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 根据ID获取商品
      */
     @GetMapping("/product/{id}")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<ProductDTO> getProductById(@PathVariable Long id) {
         try {
             ProductDTO product = productService.getProductById(id);
@@ -99,6 +141,9 @@ public class ProductController {
             if (productDTO.getRemainingQuantity() == null || productDTO.getRemainingQuantity() < 0) {
                 return ApiResponse.badRequest("剩余数量不能为空且不能小于0");
             }
+            if (productDTO.getLowStockThreshold() != null && productDTO.getLowStockThreshold() < 0) {
+                return ApiResponse.badRequest("库存预警值不能小于0");
+            }
 
             // 检查名称和规格组合重复
             boolean isDuplicate = productService.isNameAndSpecDuplicate(
@@ -117,6 +162,23 @@ public class ProductController {
         }
     }
 
+    /**
+     * 上传商品图片（multipart）
+     * 上传内容由容器写入临时文件，再以流的方式校验并保存到图片存储，不经过 JSON 和 base64
+     */
+    @PostMapping(value = "/product/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ApiResponse<ProductDTO> uploadProductImage(@PathVariable Long id,
+                                                      @RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return ApiResponse.badRequest("请选择图片文件");
+        }
+        try (InputStream input = file.getInputStream()) {
+            return ApiResponse.success("商品图片上传成功", productService.updateProductImage(id, input));
+        } catch (Exception e) {
+            return ApiResponse.error("上传商品图片失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 删除商品
      */
@@ -131,11 +193,12 @@ public class ProductController {
     }
 
     /**
-     * 获取库存不足的商品
+     * 获取库存不足的商品（商品设置了预警值时按自身预警值判断，否则按threshold判断）
      */
     @GetMapping("/products/low-stock")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<List<ProductDTO>> getLowStockProducts(
-            @RequestParam(defaultValue = "10") Integer threshold) {
+            @RequestParam(required = false) Integer threshold) {
         try {
             List<ProductDTO> products = productService.getLowStockProducts(threshold);
             return ApiResponse.success(products);
@@ -148,6 +211,7 @@ public class ProductController {
      * 获取商品总数
      */
     @GetMapping("/products/count")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<Long> getProductCount() {
         try {
             Long count = productService.getProductCount();
@@ -161,6 +225,7 @@ public class ProductController {
      * 获取库存总量
      */
     @GetMapping("/products/stock/total")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<Integer> getTotalStock() {
         try {
             Integer total = productService.getTotalStock();
@@ -174,6 +239,7 @@ public class ProductController {
      * 获取库存价值
      */
     @GetMapping("/products/stock/value")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<java.math.BigDecimal> getStockValue() {
         try {
             java.math.BigDecimal value = productService.getStockValue();
@@ -1,17 +1,24 @@
 package com.shelf.controller;
 
+import com.shelf.config.ConditionalGetInterceptor;
+import com.shelf.config.DataVersioned;
 import com.shelf.dto.ApiResponse;
 import com.shelf.service.ProductService;
 import com.shelf.service.OutboundRecordService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 
+import static com.shelf.service.DataVersionService.Domain.*;
+
 /**
  * 统计数据控制器 - 优化版本，集中管理统计API
  */
+@Slf4j
 @RestController
 @RequestMapping("/api/stats")
 @RequiredArgsConstructor
@@ -25,7 +32,8 @@ public class StatsController {
      * 获取仪表盘统计数据 - 一次性获取所有统计
      */
     @GetMapping("/dashboard")
-    public ApiResponse<DashboardStats> getDashboardStats() {
+    @DataVersioned(value = {PRODUCTS, OUTBOUND}, daily = true)
+    public ApiResponse<DashboardStats> getDashboardStats(HttpServletRequest request) {
         try {
             DashboardStats stats = new DashboardStats();
             
@@ -34,12 +42,14 @@ public class StatsController {
             stats.setTotalStock(productService.getTotalStock());
             stats.setStockValue(productService.getStockValue());
             
-            // 获取今日出库数据
+            // 获取今日出库数据，失败时显示0，但不写出 ETag，下次请求重新获取
             try {
                 Integer todayOutbound = getTodayOutboundQuantity();
                 stats.setTodayOutbound(todayOutbound);
             } catch (Exception e) {
+                log.warn("获取今日出库数据失败，仪表盘暂时显示0", e);
                 stats.setTodayOutbound(0);
+                ConditionalGetInterceptor.skipEtag(request);
             }
             
             return ApiResponse.success(stats);
@@ -52,6 +62,7 @@ public class StatsController {
      * 获取商品总数
      */
     @GetMapping("/products/count")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<Long> getProductCount() {
         try {
             Long count = productService.getProductCount();
@@ -65,6 +76,7 @@ public class StatsController {
      * 获取库存总量
      */
     @GetMapping("/stock/total")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<Integer> getTotalStock() {
         try {
             Integer total = productService.getTotalStock();
@@ -78,6 +90,7 @@ public class StatsController {
      * 获取库存价值
      */
     @GetMapping("/stock/value")
+    @DataVersioned(PRODUCTS)
     public ApiResponse<BigDecimal> getStockValue() {
         try {
             BigDecimal value = productService.getStockValue();
@@ -91,6 +104,7 @@ public class StatsController {
      * 获取今日出库数量
      */
     @GetMapping("/outbound/today")
+    @DataVersioned(value = OUTBOUND, daily = true)
     public ApiResponse<Integer> getTodayOutbound() {
         try {
             Integer count = getTodayOutboundQuantity();
@@ -104,12 +118,8 @@ public class StatsController {
      * 获取今日出库数量的内部方法
      */
     private Integer getTodayOutboundQuantity() {
-        try {
-            LocalDate today = LocalDate.now();
-            return outboundRecordService.getTotalOutboundQuantity(today, today);
-        } catch (Exception e) {
-            return 0;
-        }
+        LocalDate today = LocalDate.now();
+        return outboundRecordService.getTotalOutboundQuantity(today, today);
     }
 
     /**
@@ -1,8 +1,12 @@
 package com.shelf.controller;
 
+import com.shelf.config.DataVersioned;
 import com.shelf.dto.ApiResponse;
 import com.shelf.dto.StockExportDTO;
+import com.shelf.dto.StockMatrixDTO;
 import com.shelf.service.ProductService;
+import com.shelf.service.ProductStockService;
+import com.shelf.util.FieldSelection;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
@@ -17,6 +21,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 
+import static com.shelf.service.DataVersionService.Domain.*;
+
 /**
  * 库存控制器
  */
@@ -26,12 +32,17 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class StockController {
 
+    /** 库存矩阵最多返回的日期数 */
+    private static final int MAX_MATRIX_DATES = 366;
+
     private final ProductService productService;
+    private final ProductStockService productStockService;
 
     /**
      * 获取可查询的日期范围
      */
     @GetMapping("/date-range")
+    @DataVersioned(value = PRODUCTS, daily = true)
     public ApiResponse<Map<String, String>> getDateRange() {
         try {
             Map<String, String> dateRange = productService.getStockDateRange();
@@ -42,23 +53,57 @@ public class StockController {
     }
 
     /**
-     * 查询指定日期的历史库存
+     * 查询指定日期的历史库存，fields 指定返回的字段
      */
     @GetMapping("/history")
-    public ApiResponse<List<StockExportDTO>> getHistoryStock(
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+    @DataVersioned({PRODUCTS, INBOUND, OUTBOUND})
+    public ApiResponse<List<Object>> getHistoryStock(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) String fields) {
         try {
+            FieldSelection selection = FieldSelection.of(fields, StockExportDTO.class);
+            if (!selection.getUnsupported().isEmpty()) {
+                return ApiResponse.badRequest("不支持的字段: " + String.join(",", selection.getUnsupported()));
+            }
+            // 按日期整体缓存，字段选择只作用于序列化
             List<StockExportDTO> stockList = productService.getHistoryStock(date);
-            return ApiResponse.success(stockList);
+            return ApiResponse.success(selection.apply(stockList));
         } catch (Exception e) {
             return ApiResponse.error("查询历史库存失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 查询日期区间内按间隔取样的库存矩阵（列式结构，商品信息只返回一次）
+     */
+    @GetMapping("/history/range")
+    @DataVersioned({PRODUCTS, INBOUND, OUTBOUND})
+    public ApiResponse<StockMatrixDTO> getHistoryStockRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "1") int step) {
+        try {
+            if (from.isAfter(to)) {
+                return ApiResponse.badRequest("开始日期不能晚于结束日期");
+            }
+            if (step < 1) {
+                return ApiResponse.badRequest("日期间隔不能小于1天");
+            }
+            if ((to.toEpochDay() - from.toEpochDay()) / step + 1 > MAX_MATRIX_DATES) {
+                return ApiResponse.badRequest("日期数量不能超过" + MAX_MATRIX_DATES + "个，请缩小范围或增大间隔");
+            }
+            StockMatrixDTO matrix = productService.getHistoryStockRange(from, to, step);
+            return ApiResponse.success(matrix);
+        } catch (Exception e) {
+            return ApiResponse.error("查询库存矩阵失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 查询指定商品在指定日期的历史库存
      */
     @GetMapping("/history/{productId}")
+    @DataVersioned({PRODUCTS, INBOUND, OUTBOUND})
     public ApiResponse<StockExportDTO> getProductHistoryStock(
             @PathVariable Long productId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
@@ -70,6 +115,39 @@ public class StockController {
         }
     }
 
+    /**
+     * 查询指定商品在日期区间内的净变化量（入库 - 出库）
+     */
+    @GetMapping("/history/{productId}/movement")
+    @DataVersioned({PRODUCTS, INBOUND, OUTBOUND})
+    public ApiResponse<Long> getProductNetMovement(
+            @PathVariable Long productId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        try {
+            if (startDate.isAfter(endDate)) {
+                return ApiResponse.badRequest("开始日期不能晚于结束日期");
+            }
+            Long netMovement = productService.getProductNetMovement(productId, startDate, endDate);
+            return ApiResponse.success(netMovement);
+        } catch (Exception e) {
+            return ApiResponse.error("查询商品库存变化量失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 从出入库记录分批重建库存投影
+     */
+    @PostMapping("/projection/rebuild")
+    public ApiResponse<Integer> rebuildProjection(@RequestParam(defaultValue = "500") int chunkSize) {
+        try {
+            int rebuilt = productStockService.rebuild(chunkSize);
+            return ApiResponse.success("库存投影重建完成", rebuilt);
+        } catch (Exception e) {
+            return ApiResponse.error("重建库存投影失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 导出指定日期的库存Excel
      */
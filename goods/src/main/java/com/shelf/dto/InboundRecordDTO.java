@@ -22,7 +22,11 @@ public class InboundRecordDTO {
     private String productSpec;
     private String productUnit;
     private BigDecimal productPrice;
+    private Integer productInitialStock; // 商品初始库存
+    private Integer productCurrentStock; // 商品当前库存（列表查询时返回）
     private String imageUrl; // 商品图片URL
+    private String thumbnailUrl; // 缩略图URL（列表使用）
+    private String mediumUrl; // 中图URL
     private LocalDate inDate;
     private Integer quantity;
     private LocalDateTime createdAt;
@@ -23,6 +23,8 @@ public class OutboundRecordDTO {
     private String productUnit;
     private BigDecimal productPrice;
     private String imageUrl; // 商品图片URL
+    private String thumbnailUrl; // 缩略图URL（列表使用）
+    private String mediumUrl; // 中图URL
     private LocalDate outDate;
     private Integer quantity;
     private String name; // 姓名
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 
@@ -37,4 +38,23 @@ public class PageResponse<T> {
             page.isLast()
         );
     }
+
+    /**
+     * 从 Slice 和单独查询的总数构建PageResponse；total 为空时不返回总数和总页数，是否最后一页由 Slice 判断
+     */
+    public static <T> PageResponse<T> of(Slice<T> slice, Long total) {
+        Integer totalPages = null;
+        if (total != null) {
+            totalPages = slice.getSize() > 0 ? (int) ((total + slice.getSize() - 1) / slice.getSize()) : 1;
+        }
+        return new PageResponse<>(
+            slice.getContent(),
+            slice.getNumber(),
+            slice.getSize(),
+            total,
+            totalPages,
+            slice.isFirst(),
+            slice.isLast()
+        );
+    }
 } 
\ No newline at end of file
@@ -23,7 +23,10 @@ public class ProductDTO {
     private BigDecimal price;
     private BigDecimal amount; // 金额/元
     private Integer remainingQuantity; // 剩余数量
+    private Integer lowStockThreshold; // 库存预警值（为空时使用默认预警值）
     private String imageUrl; // 商品图片URL
+    private String thumbnailUrl; // 缩略图URL（列表使用）
+    private String mediumUrl; // 中图URL
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
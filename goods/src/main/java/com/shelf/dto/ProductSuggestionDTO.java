@@ -0,0 +1,19 @@
+package com.shelf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 商品输入提示项（出入库对话框选择商品用）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSuggestionDTO {
+
+    private Long id;
+    private String name;
+    private String spec;
+    private String unit;
+}
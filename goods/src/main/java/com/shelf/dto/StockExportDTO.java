@@ -20,6 +20,8 @@ public class StockExportDTO {
     private String spec;
     private String unit;
     private String imageUrl;        // 商品图片URL
+    private String thumbnailUrl;    // 缩略图URL（列表使用）
+    private String mediumUrl;       // 中图URL
     private Integer stockQuantity;  // 指定日期的库存数量
     private BigDecimal unitPrice;
     private BigDecimal totalValue;  // 库存总价值
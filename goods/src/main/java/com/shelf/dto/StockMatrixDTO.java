@@ -0,0 +1,33 @@
+package com.shelf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 多日期库存矩阵（列式结构）
+ * 商品信息只出现一次，每个日期一组库存数组，数组下标与productIds一一对应
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockMatrixDTO {
+
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private Integer step;                // 日期间隔（天）
+    private List<LocalDate> dates;       // 统计日期
+
+    private List<Long> productIds;
+    private List<String> productNames;
+    private List<String> specs;
+    private List<String> units;
+    private List<BigDecimal> unitPrices;
+
+    private List<int[]> stock;           // 每个日期的库存数量，顺序与productIds一致
+    private List<BigDecimal> totalValues; // 每个日期的库存总价值
+}
@@ -13,19 +13,27 @@ import java.time.LocalDateTime;
  * 入库记录实体类
  */
 @Entity
-@Table(name = "inbound_record")
+@Table(name = "inbound_record", indexes = {
+        @Index(name = "idx_inbound_date_id", columnList = "in_date, id"),
+        @Index(name = "idx_inbound_product_date_id", columnList = "product_id, in_date, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class InboundRecord {
+public class InboundRecord implements InboundRecordView {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /** 旧数据中复制的商品图片（base64 或地址），迁移后为空 */
     @Column(name = "image_url", columnDefinition = "TEXT")
     private String imageUrl;
 
+    /** 出入库时商品图片的哈希，图片本身只在图片存储中保存一份 */
+    @Column(name = "image_hash", length = 64)
+    private String imageHash;
+
     @Column(name = "product_id", nullable = false)
     private Long productId;
 
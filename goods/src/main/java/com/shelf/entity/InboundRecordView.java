@@ -0,0 +1,24 @@
+package com.shelf.entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 入库记录列表视图，由实体和仓库投影查询共同实现；投影查询不读取 image_url 中复制的图片数据
+ */
+public interface InboundRecordView {
+
+    Long getId();
+
+    Long getProductId();
+
+    LocalDate getInDate();
+
+    Integer getQuantity();
+
+    String getImageHash();
+
+    String getImageUrl();
+
+    LocalDateTime getCreatedAt();
+}
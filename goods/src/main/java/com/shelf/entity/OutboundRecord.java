@@ -13,19 +13,27 @@ import java.time.LocalDateTime;
  * 出库记录实体类
  */
 @Entity
-@Table(name = "outbound_record")
+@Table(name = "outbound_record", indexes = {
+        @Index(name = "idx_outbound_date_id", columnList = "out_date, id"),
+        @Index(name = "idx_outbound_product_date_id", columnList = "product_id, out_date, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class OutboundRecord {
+public class OutboundRecord implements OutboundRecordView {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /** 旧数据中复制的商品图片（base64 或地址），迁移后为空 */
     @Column(name = "image_url", columnDefinition = "TEXT")
     private String imageUrl;
 
+    /** 出入库时商品图片的哈希，图片本身只在图片存储中保存一份 */
+    @Column(name = "image_hash", length = 64)
+    private String imageHash;
+
     @Column(name = "product_id", nullable = false)
     private Long productId;
 
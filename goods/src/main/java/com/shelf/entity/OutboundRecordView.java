@@ -0,0 +1,28 @@
+package com.shelf.entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 出库记录列表视图，由实体和仓库投影查询共同实现；投影查询不读取 image_url 中复制的图片数据
+ */
+public interface OutboundRecordView {
+
+    Long getId();
+
+    Long getProductId();
+
+    LocalDate getOutDate();
+
+    Integer getQuantity();
+
+    String getName();
+
+    Integer getPaymentStatus();
+
+    String getImageHash();
+
+    String getImageUrl();
+
+    LocalDateTime getCreatedAt();
+}
@@ -18,7 +18,7 @@ import java.time.LocalDateTime;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class Product {
+public class Product implements ProductView {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -45,9 +45,18 @@ public class Product {
     @Column(name = "remaining_quantity", nullable = false)
     private Integer remainingQuantity = 0;
 
+    /** 库存预警值，为空时使用系统默认预警值 */
+    @Column(name = "low_stock_threshold")
+    private Integer lowStockThreshold;
+
+    /** 外部图片地址；旧数据中的 base64 图片迁移前也保存在这里 */
     @Column(name = "image_url", columnDefinition = "TEXT")
     private String imageUrl;
 
+    /** 图片内容哈希（SHA-256），图片文件由 ImageStorageService 保存 */
+    @Column(name = "image_hash", length = 64)
+    private String imageHash;
+
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,43 @@
+package com.shelf.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 商品库存投影实体类（由出入库写操作实时维护，避免每次汇总全部历史记录）
+ */
+@Entity
+@Table(name = "product_stock", indexes = {
+        @Index(name = "idx_product_stock_current", columnList = "current_stock")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductStock {
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "total_inbound", nullable = false)
+    private Integer totalInbound = 0;
+
+    @Column(name = "total_outbound", nullable = false)
+    private Integer totalOutbound = 0;
+
+    @Column(name = "current_stock", nullable = false)
+    private Integer currentStock = 0;
+
+    @Column(name = "stock_value", nullable = false, precision = 14, scale = 2)
+    private BigDecimal stockValue = BigDecimal.ZERO;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,36 @@
+package com.shelf.entity;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 商品列表视图
+ * 列表、导出和出入库记录组装DTO时使用的商品字段，由实体和仓库投影查询共同实现；
+ * 投影查询不读取 image_url 中的图片数据，imageUrl 只返回外部图片地址
+ */
+public interface ProductView {
+
+    Long getId();
+
+    String getName();
+
+    String getSpec();
+
+    String getUnit();
+
+    Integer getInitialStock();
+
+    BigDecimal getPrice();
+
+    BigDecimal getAmount();
+
+    Integer getLowStockThreshold();
+
+    String getImageHash();
+
+    String getImageUrl();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+}
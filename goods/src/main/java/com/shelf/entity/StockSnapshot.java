@@ -0,0 +1,44 @@
+package com.shelf.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 库存快照实体类（记录截止到快照日期（含）的累计出入库数量）
+ */
+@Entity
+@Table(name = "stock_snapshot",
+        uniqueConstraints = @UniqueConstraint(name = "uk_stock_snapshot_product_date",
+                columnNames = {"product_id", "snapshot_date"}),
+        indexes = @Index(name = "idx_stock_snapshot_date", columnList = "snapshot_date"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "snapshot_date", nullable = false)
+    private LocalDate snapshotDate;
+
+    @Column(name = "total_inbound", nullable = false)
+    private Integer totalInbound = 0;
+
+    @Column(name = "total_outbound", nullable = false)
+    private Integer totalOutbound = 0;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -1,21 +1,59 @@
 package com.shelf.repository;
 
 import com.shelf.entity.InboundRecord;
+import com.shelf.entity.InboundRecordView;
+import com.shelf.entity.ProductView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 入库记录数据访问接口
  */
 @Repository
-public interface InboundRecordRepository extends JpaRepository<InboundRecord, Long> {
+public interface InboundRecordRepository extends JpaRepository<InboundRecord, Long>, InboundRecordRepositoryCustom {
+
+    /**
+     * 列表投影的记录列（原生SQL）：有图片哈希时不返回也不读取 image_url（CASE 按顺序求值），base64 旧数据不返回；
+     * 尚未迁移（没有哈希）的旧记录仍要读取 image_url 判断是否为 base64，执行记录图片迁移后这部分开销消失
+     * 别名加双引号保留大小写，MySQL 和 PostgreSQL 都按别名映射到 InboundRecordView
+     */
+    String VIEW_COLUMNS = "i.id AS \"id\", i.product_id AS \"productId\", i.in_date AS \"inDate\", " +
+            "i.quantity AS \"quantity\", i.image_hash AS \"imageHash\", " +
+            "CASE WHEN i.image_hash IS NOT NULL THEN NULL WHEN i.image_url NOT LIKE 'data:%' THEN i.image_url END " +
+            "AS \"imageUrl\", " +
+            "i.created_at AS \"createdAt\"";
+
+    /**
+     * 列表可排序的字段及对应的列（均有索引或为索引前导列），不在其中的排序字段不允许使用
+     */
+    Map<String, String> SORT_COLUMNS = Map.of("id", "i.id", "inDate", "i.in_date", "createdAt", "i.created_at",
+            "productId", "i.product_id");
+
+    /**
+     * 记录列表行（实体本身也实现 InboundRecordView，查询须返回子接口才会按投影映射）
+     */
+    interface ListRow extends InboundRecordView {
+    }
+
+    /**
+     * 记录列表行及其商品字段，由同一条关联查询返回（商品已删除时为 null）
+     */
+    interface ProductListRow extends ListRow {
+
+        ProductView getProduct();
+
+        /** 商品当前库存，商品已删除时为 null */
+        Integer getProductCurrentStock();
+    }
 
     /**
      * 根据日期范围查询入库记录（分页）
@@ -38,100 +76,6 @@ public interface InboundRecordRepository extends JpaRepository<InboundRecord, Lo
                                                    @Param("endDate") LocalDate endDate,
                                                    Pageable pageable);
 
-    /**
-     * 根据多个条件查询入库记录（PostgreSQL兼容 - 使用原生SQL避免类型推断问题）
-     */
-    @Query(value = "SELECT * FROM inbound_record i WHERE " +
-           "(:productId IS NULL OR i.product_id = CAST(:productId AS BIGINT)) AND " +
-           "(:startDate IS NULL OR i.in_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR i.in_date <= CAST(:endDate AS DATE))", 
-           nativeQuery = true)
-    Page<InboundRecord> findByMultipleConditions(@Param("productId") Long productId,
-                                                @Param("startDate") String startDate,
-                                                @Param("endDate") String endDate,
-                                                Pageable pageable);
-
-    /**
-     * 根据多个条件查询入库记录（PostgreSQL兼容的原生SQL版本）
-     */
-    @Query(value = "SELECT * FROM inbound_record i WHERE " +
-           "(:productId IS NULL OR i.product_id = :productId) AND " +
-           "(:startDate IS NULL OR i.in_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR i.in_date <= CAST(:endDate AS DATE)) " +
-           "ORDER BY i.id DESC " +
-           "LIMIT :limit OFFSET :offset", 
-           nativeQuery = true)
-    List<InboundRecord> findByMultipleConditionsNative(@Param("productId") Long productId,
-                                                      @Param("startDate") String startDate,
-                                                      @Param("endDate") String endDate,
-                                                      @Param("limit") int limit,
-                                                      @Param("offset") int offset);
-
-    /**
-     * 计算原生查询的总数（PostgreSQL兼容）
-     */
-    @Query(value = "SELECT COUNT(*) FROM inbound_record i WHERE " +
-           "(:productId IS NULL OR i.product_id = :productId) AND " +
-           "(:startDate IS NULL OR i.in_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR i.in_date <= CAST(:endDate AS DATE))", 
-           nativeQuery = true)
-    Long countByMultipleConditionsNative(@Param("productId") Long productId,
-                                        @Param("startDate") String startDate,
-                                        @Param("endDate") String endDate);
-
-    /**
-     * 根据多个条件查询入库记录（包括商品名称搜索）- PostgreSQL兼容的原生SQL版本，优化JOIN性能
-     */
-    @Query(value = "SELECT i.*, p.name as product_name, p.spec as product_spec, " +
-           "p.unit as product_unit, p.price as product_price, p.image_url as product_image " +
-           "FROM inbound_record i " +
-           "LEFT JOIN product p ON i.product_id = p.id WHERE " +
-           "(:productId IS NULL OR i.product_id = CAST(:productId AS BIGINT)) AND " +
-           "(:productName IS NULL OR :productName = '' OR LOWER(p.name) LIKE LOWER('%' || :productName || '%')) AND " +
-           "(:startDate IS NULL OR i.in_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR i.in_date <= CAST(:endDate AS DATE)) " +
-           "ORDER BY i.created_at DESC", 
-           nativeQuery = true)
-    Page<InboundRecord> findByMultipleConditionsWithProductName(@Param("productId") Long productId,
-                                                              @Param("productName") String productName,
-                                                              @Param("startDate") String startDate,
-                                                              @Param("endDate") String endDate,
-                                                              Pageable pageable);
-
-    /**
-     * PostgreSQL兼容的商品名称搜索（原生SQL版本）
-     */
-    @Query(value = "SELECT i.* FROM inbound_record i " +
-           "LEFT JOIN product p ON i.product_id = p.id WHERE " +
-           "(:productId IS NULL OR i.product_id = :productId) AND " +
-           "(:productName IS NULL OR :productName = '' OR LOWER(p.name) LIKE LOWER('%' || :productName || '%')) AND " +
-           "(:startDate IS NULL OR i.in_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR i.in_date <= CAST(:endDate AS DATE)) " +
-           "ORDER BY i.id DESC " +
-           "LIMIT :limit OFFSET :offset", 
-           nativeQuery = true)
-    List<InboundRecord> findByMultipleConditionsWithProductNameNative(@Param("productId") Long productId,
-                                                                     @Param("productName") String productName,
-                                                                     @Param("startDate") String startDate,
-                                                                     @Param("endDate") String endDate,
-                                                                     @Param("limit") int limit,
-                                                                     @Param("offset") int offset);
-
-    /**
-     * PostgreSQL兼容的商品名称搜索计数（原生SQL版本）
-     */
-    @Query(value = "SELECT COUNT(*) FROM inbound_record i " +
-           "LEFT JOIN product p ON i.product_id = p.id WHERE " +
-           "(:productId IS NULL OR i.product_id = :productId) AND " +
-           "(:productName IS NULL OR :productName = '' OR LOWER(p.name) LIKE LOWER('%' || :productName || '%')) AND " +
-           "(:startDate IS NULL OR i.in_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR i.in_date <= CAST(:endDate AS DATE))", 
-           nativeQuery = true)
-    Long countByMultipleConditionsWithProductNameNative(@Param("productId") Long productId,
-                                                       @Param("productName") String productName,
-                                                       @Param("startDate") String startDate,
-                                                       @Param("endDate") String endDate);
-
     /**
      * 根据商品名称查询商品ID列表
      */
@@ -194,6 +138,45 @@ public interface InboundRecordRepository extends JpaRepository<InboundRecord, Lo
            "WHERE i.inDate <= :date GROUP BY i.productId")
     List<Object[]> sumQuantityGroupByProductBeforeDate(@Param("date") LocalDate date);
 
+    /**
+     * 查询所有商品在日期区间 (fromDate, toDate] 内的入库数量（用于快照滚动计算）
+     */
+    @Query("SELECT i.productId, COALESCE(SUM(i.quantity), 0) FROM InboundRecord i " +
+           "WHERE i.inDate > :fromDate AND i.inDate <= :toDate GROUP BY i.productId")
+    List<Object[]> sumQuantityGroupByProductBetween(@Param("fromDate") LocalDate fromDate,
+                                                    @Param("toDate") LocalDate toDate);
+
+    /**
+     * 统计指定商品在日期区间 (fromDate, toDate] 内的入库数量
+     */
+    @Query("SELECT COALESCE(SUM(i.quantity), 0) FROM InboundRecord i " +
+           "WHERE i.productId = :productId AND i.inDate > :fromDate AND i.inDate <= :toDate")
+    Integer sumQuantityByProductIdBetween(@Param("productId") Long productId,
+                                          @Param("fromDate") LocalDate fromDate,
+                                          @Param("toDate") LocalDate toDate);
+
+    /**
+     * 查询最早的入库日期
+     */
+    @Query("SELECT MIN(i.inDate) FROM InboundRecord i")
+    LocalDate findEarliestInDate();
+
+    /**
+     * 按日期汇总指定商品的入库数量（用于构建商品库存时间索引）
+     */
+    @Query("SELECT i.inDate, SUM(i.quantity) FROM InboundRecord i " +
+           "WHERE i.productId = :productId GROUP BY i.inDate")
+    List<Object[]> sumQuantityGroupByDateForProduct(@Param("productId") Long productId);
+
+    /**
+     * 按商品和日期汇总日期区间 (fromDate, toDate] 内的入库数量，按日期排序（用于构建库存矩阵）
+     */
+    @Query("SELECT i.productId, i.inDate, SUM(i.quantity) FROM InboundRecord i " +
+           "WHERE i.inDate > :fromDate AND i.inDate <= :toDate " +
+           "GROUP BY i.productId, i.inDate ORDER BY i.inDate")
+    List<Object[]> sumQuantityGroupByProductAndDateBetween(@Param("fromDate") LocalDate fromDate,
+                                                           @Param("toDate") LocalDate toDate);
+
     /**
      * 统计指定商品的总入库数量（不限日期）
      */
@@ -208,12 +191,6 @@ public interface InboundRecordRepository extends JpaRepository<InboundRecord, Lo
            "WHERE i.productId IN :productIds GROUP BY i.productId")
     List<Object[]> sumQuantityByProductIds(@Param("productIds") List<Long> productIds);
 
-    /**
-     * 简单查询所有入库记录（无条件，用于调试）- 移除ORDER BY避免冲突
-     */
-    @Query("SELECT i FROM InboundRecord i")
-    Page<InboundRecord> findAllOrderByIdDesc(Pageable pageable);
-
     /**
      * 根据日期范围查询（简化版）- 移除ORDER BY避免冲突
      */
@@ -221,4 +198,45 @@ public interface InboundRecordRepository extends JpaRepository<InboundRecord, Lo
     Page<InboundRecord> findByDateRangeSimple(@Param("startDate") LocalDate startDate,
                                              @Param("endDate") LocalDate endDate,
                                              Pageable pageable);
+
+    /**
+     * 按ID分批查询仍复制着商品图片（base64 或本系统图片地址）且尚未记录哈希的记录ID（图片迁移用）
+     */
+    @Query("SELECT i.id FROM InboundRecord i WHERE i.id > :afterId AND i.imageHash IS NULL " +
+           "AND (i.imageUrl LIKE 'data:%' OR i.imageUrl LIKE '%/api/images/%') ORDER BY i.id")
+    List<Long> findIdsWithCopiedImageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 按ID分批查询已记录哈希但仍保留复制图片的记录ID（清理迁移原图用）
+     */
+    @Query("SELECT i.id FROM InboundRecord i WHERE i.id > :afterId AND i.imageHash IS NOT NULL " +
+           "AND i.imageUrl IS NOT NULL ORDER BY i.id")
+    List<Long> findIdsWithMigratedImageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 查询单条记录的图片哈希
+     */
+    @Query("SELECT i.imageHash FROM InboundRecord i WHERE i.id = :id")
+    String findImageHashById(@Param("id") Long id);
+
+    /**
+     * 查询单条记录复制的图片
+     */
+    @Query("SELECT i.imageUrl FROM InboundRecord i WHERE i.id = :id")
+    String findImageUrlById(@Param("id") Long id);
+
+    /**
+     * 为复制着图片的记录写入图片哈希，原图保留到清理步骤；记录已被修改（图片已清空或已有哈希）时不更新
+     */
+    @Modifying
+    @Query("UPDATE InboundRecord i SET i.imageHash = :imageHash " +
+           "WHERE i.id = :id AND i.imageUrl IS NOT NULL AND i.imageHash IS NULL")
+    int assignImageHash(@Param("id") Long id, @Param("imageHash") String imageHash);
+
+    /**
+     * 清空已记录哈希的记录中复制的图片；图片哈希已变化时不更新
+     */
+    @Modifying
+    @Query("UPDATE InboundRecord i SET i.imageUrl = NULL WHERE i.id = :id AND i.imageHash = :imageHash")
+    int clearMigratedImage(@Param("id") Long id, @Param("imageHash") String imageHash);
 }
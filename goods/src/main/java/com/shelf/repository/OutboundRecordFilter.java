@@ -0,0 +1,26 @@
+package com.shelf.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * 出库记录列表查询条件，为 null 的条件不参与查询
+ * productIds 为商品名称经搜索索引解析出的商品ID，索引不可用时改用 productName 关联商品表过滤
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboundRecordFilter {
+
+    private Long productId;
+    private String productName;
+    private Collection<Long> productIds;
+    private String name;
+    private Integer paymentStatus;
+    private LocalDate startDate;
+    private LocalDate endDate;
+}
@@ -1,21 +1,57 @@
 package com.shelf.repository;
 
 import com.shelf.entity.OutboundRecord;
+import com.shelf.entity.OutboundRecordView;
+import com.shelf.entity.ProductView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 出库记录数据访问接口
  */
 @Repository
-public interface OutboundRecordRepository extends JpaRepository<OutboundRecord, Long> {
+public interface OutboundRecordRepository extends JpaRepository<OutboundRecord, Long>, OutboundRecordRepositoryCustom {
+
+    /**
+     * 列表投影的记录列（原生SQL）：有图片哈希时不返回也不读取 image_url（CASE 按顺序求值），base64 旧数据不返回；
+     * 尚未迁移（没有哈希）的旧记录仍要读取 image_url 判断是否为 base64，执行记录图片迁移后这部分开销消失
+     * 别名加双引号保留大小写，MySQL 和 PostgreSQL 都按别名映射到 OutboundRecordView
+     */
+    String VIEW_COLUMNS = "o.id AS \"id\", o.product_id AS \"productId\", o.out_date AS \"outDate\", " +
+            "o.quantity AS \"quantity\", o.name AS \"name\", o.payment_status AS \"paymentStatus\", " +
+            "o.image_hash AS \"imageHash\", " +
+            "CASE WHEN o.image_hash IS NOT NULL THEN NULL WHEN o.image_url NOT LIKE 'data:%' THEN o.image_url END " +
+            "AS \"imageUrl\", " +
+            "o.created_at AS \"createdAt\"";
+
+    /**
+     * 列表可排序的字段及对应的列（均有索引或为索引前导列），不在其中的排序字段不允许使用
+     */
+    Map<String, String> SORT_COLUMNS = Map.of("id", "o.id", "outDate", "o.out_date", "createdAt", "o.created_at",
+            "productId", "o.product_id", "paymentStatus", "o.payment_status", "name", "o.name");
+
+    /**
+     * 记录列表行（实体本身也实现 OutboundRecordView，查询须返回子接口才会按投影映射）
+     */
+    interface ListRow extends OutboundRecordView {
+    }
+
+    /**
+     * 记录列表行及其商品字段，由同一条关联查询返回（商品已删除时为 null）
+     */
+    interface ProductListRow extends ListRow {
+
+        ProductView getProduct();
+    }
 
     /**
      * 根据日期范围查询出库记录（分页）
@@ -39,46 +75,13 @@ public interface OutboundRecordRepository extends JpaRepository<OutboundRecord,
                                                     Pageable pageable);
 
     /**
-     * 根据多个条件查询出库记录（PostgreSQL兼容的原生SQL版本）
+     * 查询指定日期范围内的所有出库记录（用于导出，不读取图片数据）
      */
-    @Query(value = "SELECT * FROM outbound_record o WHERE " +
-           "(:productId IS NULL OR o.product_id = CAST(:productId AS BIGINT)) AND " +
-           "(:name IS NULL OR :name = '' OR LOWER(o.name) LIKE LOWER('%' || :name || '%')) AND " +
-           "(:paymentStatus IS NULL OR o.payment_status = CAST(:paymentStatus AS INTEGER)) AND " +
-           "(:startDate IS NULL OR o.out_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR o.out_date <= CAST(:endDate AS DATE))", 
+    @Query(value = "SELECT " + VIEW_COLUMNS + " FROM outbound_record o " +
+           "WHERE o.out_date BETWEEN :startDate AND :endDate",
            nativeQuery = true)
-    Page<OutboundRecord> findByMultipleConditions(@Param("productId") Long productId,
-                                                 @Param("name") String name,
-                                                 @Param("paymentStatus") Integer paymentStatus,
-                                                 @Param("startDate") String startDate,
-                                                 @Param("endDate") String endDate,
-                                                 Pageable pageable);
-
-    /**
-     * 根据多个条件查询出库记录（包括商品名称搜索）- PostgreSQL兼容的原生SQL版本
-     */
-    @Query(value = "SELECT o.* FROM outbound_record o " +
-           "LEFT JOIN product p ON o.product_id = p.id WHERE " +
-           "(:productId IS NULL OR o.product_id = CAST(:productId AS BIGINT)) AND " +
-           "(:productName IS NULL OR :productName = '' OR LOWER(p.name) LIKE LOWER('%' || :productName || '%')) AND " +
-           "(:name IS NULL OR :name = '' OR LOWER(o.name) LIKE LOWER('%' || :name || '%')) AND " +
-           "(:paymentStatus IS NULL OR o.payment_status = CAST(:paymentStatus AS INTEGER)) AND " +
-           "(:startDate IS NULL OR o.out_date >= CAST(:startDate AS DATE)) AND " +
-           "(:endDate IS NULL OR o.out_date <= CAST(:endDate AS DATE))", 
-           nativeQuery = true)
-    Page<OutboundRecord> findByMultipleConditionsWithProductName(@Param("productId") Long productId,
-                                                                @Param("productName") String productName,
-                                                                @Param("name") String name,
-                                                                @Param("paymentStatus") Integer paymentStatus,
-                                                                @Param("startDate") String startDate,
-                                                                @Param("endDate") String endDate,
-                                                                Pageable pageable);
-
-    /**
-     * 查询指定日期范围内的所有出库记录（用于统计）
-     */
-    List<OutboundRecord> findByOutDateBetween(LocalDate startDate, LocalDate endDate);
+    List<ListRow> findByOutDateBetween(@Param("startDate") LocalDate startDate,
+                                       @Param("endDate") LocalDate endDate);
 
     /**
      * 统计指定商品的总出库数量
@@ -117,10 +120,90 @@ public interface OutboundRecordRepository extends JpaRepository<OutboundRecord,
            "WHERE o.outDate <= :date GROUP BY o.productId")
     List<Object[]> sumQuantityGroupByProductBeforeDate(@Param("date") LocalDate date);
 
+    /**
+     * 查询所有商品在日期区间 (fromDate, toDate] 内的出库数量（用于快照滚动计算）
+     */
+    @Query("SELECT o.productId, COALESCE(SUM(o.quantity), 0) FROM OutboundRecord o " +
+           "WHERE o.outDate > :fromDate AND o.outDate <= :toDate GROUP BY o.productId")
+    List<Object[]> sumQuantityGroupByProductBetween(@Param("fromDate") LocalDate fromDate,
+                                                    @Param("toDate") LocalDate toDate);
+
+    /**
+     * 统计指定商品在日期区间 (fromDate, toDate] 内的出库数量
+     */
+    @Query("SELECT COALESCE(SUM(o.quantity), 0) FROM OutboundRecord o " +
+           "WHERE o.productId = :productId AND o.outDate > :fromDate AND o.outDate <= :toDate")
+    Integer sumQuantityByProductIdBetween(@Param("productId") Long productId,
+                                          @Param("fromDate") LocalDate fromDate,
+                                          @Param("toDate") LocalDate toDate);
+
+    /**
+     * 查询最早的出库日期
+     */
+    @Query("SELECT MIN(o.outDate) FROM OutboundRecord o")
+    LocalDate findEarliestOutDate();
+
+    /**
+     * 按日期汇总指定商品的出库数量（用于构建商品库存时间索引）
+     */
+    @Query("SELECT o.outDate, SUM(o.quantity) FROM OutboundRecord o " +
+           "WHERE o.productId = :productId GROUP BY o.outDate")
+    List<Object[]> sumQuantityGroupByDateForProduct(@Param("productId") Long productId);
+
+    /**
+     * 按商品和日期汇总日期区间 (fromDate, toDate] 内的出库数量，按日期排序（用于构建库存矩阵）
+     */
+    @Query("SELECT o.productId, o.outDate, SUM(o.quantity) FROM OutboundRecord o " +
+           "WHERE o.outDate > :fromDate AND o.outDate <= :toDate " +
+           "GROUP BY o.productId, o.outDate ORDER BY o.outDate")
+    List<Object[]> sumQuantityGroupByProductAndDateBetween(@Param("fromDate") LocalDate fromDate,
+                                                           @Param("toDate") LocalDate toDate);
+
     /**
      * 批量查询多个商品的出库数量
      */
     @Query("SELECT o.productId, COALESCE(SUM(o.quantity), 0) FROM OutboundRecord o " +
            "WHERE o.productId IN :productIds GROUP BY o.productId")
     List<Object[]> sumQuantityByProductIds(@Param("productIds") List<Long> productIds);
-} 
+
+    /**
+     * 按ID分批查询仍复制着商品图片（base64 或本系统图片地址）且尚未记录哈希的记录ID（图片迁移用）
+     */
+    @Query("SELECT o.id FROM OutboundRecord o WHERE o.id > :afterId AND o.imageHash IS NULL " +
+           "AND (o.imageUrl LIKE 'data:%' OR o.imageUrl LIKE '%/api/images/%') ORDER BY o.id")
+    List<Long> findIdsWithCopiedImageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 按ID分批查询已记录哈希但仍保留复制图片的记录ID（清理迁移原图用）
+     */
+    @Query("SELECT o.id FROM OutboundRecord o WHERE o.id > :afterId AND o.imageHash IS NOT NULL " +
+           "AND o.imageUrl IS NOT NULL ORDER BY o.id")
+    List<Long> findIdsWithMigratedImageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 查询单条记录的图片哈希
+     */
+    @Query("SELECT o.imageHash FROM OutboundRecord o WHERE o.id = :id")
+    String findImageHashById(@Param("id") Long id);
+
+    /**
+     * 查询单条记录复制的图片
+     */
+    @Query("SELECT o.imageUrl FROM OutboundRecord o WHERE o.id = :id")
+    String findImageUrlById(@Param("id") Long id);
+
+    /**
+     * 为复制着图片的记录写入图片哈希，原图保留到清理步骤；记录已被修改（图片已清空或已有哈希）时不更新
+     */
+    @Modifying
+    @Query("UPDATE OutboundRecord o SET o.imageHash = :imageHash " +
+           "WHERE o.id = :id AND o.imageUrl IS NOT NULL AND o.imageHash IS NULL")
+    int assignImageHash(@Param("id") Long id, @Param("imageHash") String imageHash);
+
+    /**
+     * 清空已记录哈希的记录中复制的图片；图片哈希已变化时不更新
+     */
+    @Modifying
+    @Query("UPDATE OutboundRecord o SET o.imageUrl = NULL WHERE o.id = :id AND o.imageHash = :imageHash")
+    int clearMigratedImage(@Param("id") Long id, @Param("imageHash") String imageHash);
+}
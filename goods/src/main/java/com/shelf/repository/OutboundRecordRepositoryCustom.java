@@ -0,0 +1,42 @@
+package com.shelf.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 出库记录列表查询（原生SQL只包含实际提供的条件，见 {@link OutboundRecordRepositoryImpl}）
+ */
+public interface OutboundRecordRepositoryCustom {
+
+    /**
+     * 按条件分页查询出库记录，排序字段须在 {@link OutboundRecordRepository#SORT_COLUMNS} 中，未指定时按ID倒序
+     */
+    Slice<OutboundRecordRepository.ListRow> findByFilter(OutboundRecordFilter filter, Pageable pageable);
+
+    /**
+     * 统计满足条件的记录数（与分页查询条件相同，总数单独查询，可缓存或省略）
+     */
+    long countByFilter(OutboundRecordFilter filter);
+
+    /**
+     * 游标分页查询出库记录：按 (出库日期, ID) 倒序，从游标位置之后取 limit 条（走 (out_date, id) 索引，不使用 OFFSET）
+     */
+    List<OutboundRecordRepository.ListRow> findAfterCursor(OutboundRecordFilter filter, LocalDate afterDate,
+                                                           Long afterId, int limit);
+
+    /**
+     * 按条件分页查询出库记录及其商品字段（关联商品表，一条语句返回，不再按商品ID另行查询）
+     */
+    Slice<OutboundRecordRepository.ProductListRow> findWithProductByFilter(OutboundRecordFilter filter,
+                                                                           Pageable pageable);
+
+    /**
+     * 游标分页查询出库记录及其商品字段
+     */
+    List<OutboundRecordRepository.ProductListRow> findWithProductAfterCursor(OutboundRecordFilter filter,
+                                                                             LocalDate afterDate, Long afterId,
+                                                                             int limit);
+}
@@ -0,0 +1,204 @@
+package com.shelf.repository;
+
+import com.shelf.config.SqlDialect;
+import com.shelf.entity.ProductView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.hibernate.query.NativeQuery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 出库记录列表查询实现
+ * 只拼接实际提供的条件，每种条件组合对应一条SQL，数据库可为其选择 (product_id, out_date) 等索引；
+ * 名称匹配按启动时确定的数据库方言生成（PostgreSQL 用 ILIKE，MySQL 用 LIKE，utf8mb4_unicode_ci 不区分大小写），
+ * 前后都带通配符的包含匹配用不上B树索引，只在其他条件筛出的行上过滤
+ */
+public class OutboundRecordRepositoryImpl implements OutboundRecordRepositoryCustom {
+
+    private static final String SELECT = "SELECT " + OutboundRecordRepository.VIEW_COLUMNS;
+    private static final String FROM = " FROM outbound_record o";
+    private static final String JOIN_PRODUCT = " JOIN product p ON o.product_id = p.id";
+    private static final String LEFT_JOIN_PRODUCT = " LEFT JOIN product p ON o.product_id = p.id";
+
+    private final String productNameMatch;
+    private final String nameMatch;
+    private final String seek;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public OutboundRecordRepositoryImpl(SqlDialect dialect) {
+        this.productNameMatch = dialect.containsIgnoreCase("p.name", "productName");
+        this.nameMatch = dialect.containsIgnoreCase("o.name", "name");
+        this.seek = dialect.seekBefore("o.out_date", "o.id", "afterDate", "afterId");
+    }
+
+    @Override
+    public Slice<OutboundRecordRepository.ListRow> findByFilter(OutboundRecordFilter filter, Pageable pageable) {
+        return slice(filter, pageable, false);
+    }
+
+    @Override
+    public Slice<OutboundRecordRepository.ProductListRow> findWithProductByFilter(OutboundRecordFilter filter,
+                                                                                  Pageable pageable) {
+        return slice(filter, pageable, true);
+    }
+
+    @Override
+    public long countByFilter(OutboundRecordFilter filter) {
+        SqlPredicates predicates = predicates(filter);
+        Query query = entityManager.createNativeQuery("SELECT COUNT(*)" + from(filter, false) + predicates.where());
+        return ((Number) predicates.bind(query).getSingleResult()).longValue();
+    }
+
+    @Override
+    public List<OutboundRecordRepository.ListRow> findAfterCursor(OutboundRecordFilter filter, LocalDate afterDate,
+                                                                  Long afterId, int limit) {
+        return afterCursor(filter, afterDate, afterId, limit, false);
+    }
+
+    @Override
+    public List<OutboundRecordRepository.ProductListRow> findWithProductAfterCursor(OutboundRecordFilter filter,
+                                                                                    LocalDate afterDate, Long afterId,
+                                                                                    int limit) {
+        return afterCursor(filter, afterDate, afterId, limit, true);
+    }
+
+    private <T extends OutboundRecordRepository.ListRow> Slice<T> slice(OutboundRecordFilter filter, Pageable pageable,
+                                                                        boolean withProduct) {
+        SqlPredicates predicates = predicates(filter);
+        Query query = entityManager.createNativeQuery(
+                select(withProduct) + from(filter, withProduct) + predicates.where() + orderBy(pageable.getSort()));
+        List<T> rows = rows(predicates.bind(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1), withProduct);
+        // 多取一条判断是否还有下一页
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+    }
+
+    private <T extends OutboundRecordRepository.ListRow> List<T> afterCursor(OutboundRecordFilter filter,
+                                                                             LocalDate afterDate, Long afterId,
+                                                                             int limit, boolean withProduct) {
+        SqlPredicates predicates = predicates(filter)
+                .add(seek, Map.of("afterDate", afterDate, "afterId", afterId));
+        Query query = entityManager.createNativeQuery(select(withProduct) + from(filter, withProduct) +
+                predicates.where() + " ORDER BY o.out_date DESC, o.id DESC");
+        return rows(predicates.bind(query).setMaxResults(limit), withProduct);
+    }
+
+    private static String select(boolean withProduct) {
+        return withProduct ? SELECT + ", " + ProductRepository.RECORD_PRODUCT_COLUMNS : SELECT;
+    }
+
+    /**
+     * 需要商品字段时左关联商品表（商品已删除的记录仍返回），只按商品名称过滤时内关联
+     */
+    private static String from(OutboundRecordFilter filter, boolean withProduct) {
+        if (withProduct) {
+            return FROM + LEFT_JOIN_PRODUCT;
+        }
+        return filter.getProductName() != null && !filter.getProductName().isEmpty() ? FROM + JOIN_PRODUCT : FROM;
+    }
+
+    private SqlPredicates predicates(OutboundRecordFilter filter) {
+        return new SqlPredicates()
+                .addIfPresent("o.product_id = :productId", "productId", filter.getProductId())
+                .addIfPresent("o.product_id IN (:productIds)", "productIds", filter.getProductIds())
+                .addIfPresent(productNameMatch, "productName", SqlDialect.escapeLike(filter.getProductName()))
+                .addIfPresent(nameMatch, "name", SqlDialect.escapeLike(filter.getName()))
+                .addIfPresent("o.payment_status = :paymentStatus", "paymentStatus", filter.getPaymentStatus())
+                .addIfPresent("o.out_date >= :startDate", "startDate", filter.getStartDate())
+                .addIfPresent("o.out_date <= :endDate", "endDate", filter.getEndDate());
+    }
+
+    /**
+     * Pageable 排序按白名单转为有索引的列，未指定排序时按ID倒序；非ID排序追加ID保证分页顺序稳定
+     */
+    private static String orderBy(Sort sort) {
+        if (sort.isUnsorted()) {
+            return " ORDER BY o.id DESC";
+        }
+        String orderBy = sort.stream()
+                .map(order -> {
+                    String column = OutboundRecordRepository.SORT_COLUMNS.get(order.getProperty());
+                    if (column == null) {
+                        throw new RuntimeException("不支持的排序字段: " + order.getProperty());
+                    }
+                    return column + (order.isAscending() ? " ASC" : " DESC");
+                })
+                .collect(Collectors.joining(", ", " ORDER BY ", ""));
+        return sort.getOrderFor("id") != null ? orderBy : orderBy + ", o.id DESC";
+    }
+
+    /**
+     * 按 VIEW_COLUMNS、RECORD_PRODUCT_COLUMNS 的别名指定各列的Java类型，不依赖驱动返回的数值、日期类型
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends OutboundRecordRepository.ListRow> List<T> rows(Query query, boolean withProduct) {
+        NativeQuery<Object[]> nativeQuery = query.unwrap(NativeQuery.class)
+                .addScalar("id", Long.class)
+                .addScalar("productId", Long.class)
+                .addScalar("outDate", LocalDate.class)
+                .addScalar("quantity", Integer.class)
+                .addScalar("name", String.class)
+                .addScalar("paymentStatus", Integer.class)
+                .addScalar("imageHash", String.class)
+                .addScalar("imageUrl", String.class)
+                .addScalar("createdAt", LocalDateTime.class);
+        if (withProduct) {
+            nativeQuery.addScalar("productName", String.class)
+                    .addScalar("productSpec", String.class)
+                    .addScalar("productUnit", String.class)
+                    .addScalar("productPrice", BigDecimal.class)
+                    .addScalar("productImageHash", String.class)
+                    .addScalar("productImageUrl", String.class)
+                    .addScalar("productInitialStock", Integer.class);
+        }
+        return nativeQuery.getResultList().stream()
+                .map(row -> (T) new Row((Long) row[0], (Long) row[1], (LocalDate) row[2], (Integer) row[3],
+                        (String) row[4], (Integer) row[5], (String) row[6], (String) row[7], (LocalDateTime) row[8],
+                        product(row, 9)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 从 offset 列开始读取关联的商品字段，未查询商品或商品已删除（名称为 NULL）时返回 null
+     */
+    private static ProductView product(Object[] row, int offset) {
+        if (row.length <= offset || row[offset] == null) {
+            return null;
+        }
+        return new RecordProduct((Long) row[1], (String) row[offset], (String) row[offset + 1],
+                (String) row[offset + 2], (BigDecimal) row[offset + 3], (String) row[offset + 4],
+                (String) row[offset + 5], (Integer) row[offset + 6]);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Row implements OutboundRecordRepository.ProductListRow {
+        private final Long id;
+        private final Long productId;
+        private final LocalDate outDate;
+        private final Integer quantity;
+        private final String name;
+        private final Integer paymentStatus;
+        private final String imageHash;
+        private final String imageUrl;
+        private final LocalDateTime createdAt;
+        private final ProductView product;
+    }
+}
@@ -1,14 +1,22 @@
 package com.shelf.repository;
 
 import com.shelf.entity.Product;
+import com.shelf.entity.ProductView;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * 商品数据访问接口
@@ -31,6 +39,218 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
                                             @Param("spec") String spec, 
                                             Pageable pageable);
 
+    /**
+     * 列表投影的商品列：有图片哈希时不返回也不读取 image_url（CASE 按顺序求值），base64 旧数据不返回；
+     * 尚未迁移（没有哈希）的行仍要读取 image_url 判断是否为 base64，大图片会被完整读出（PostgreSQL 需解压 TOAST），
+     * 执行图片迁移后这部分开销消失
+     */
+    String VIEW_COLUMNS = "p.id AS id, p.name AS name, p.spec AS spec, p.unit AS unit, " +
+            "p.initialStock AS initialStock, p.price AS price, p.amount AS amount, " +
+            "p.lowStockThreshold AS lowStockThreshold, p.imageHash AS imageHash, " +
+            "CASE WHEN p.imageHash IS NOT NULL THEN NULL WHEN p.imageUrl NOT LIKE 'data:%' THEN p.imageUrl END AS imageUrl, " +
+            "p.createdAt AS createdAt, p.updatedAt AS updatedAt";
+
+    /**
+     * 出入库记录列表关联商品时选择的商品列（原生SQL，商品表别名 p），图片规则与 VIEW_COLUMNS 相同；新增列追加在末尾
+     */
+    String RECORD_PRODUCT_COLUMNS = "p.name AS \"productName\", p.spec AS \"productSpec\", " +
+            "p.unit AS \"productUnit\", p.price AS \"productPrice\", p.image_hash AS \"productImageHash\", " +
+            "CASE WHEN p.image_hash IS NOT NULL THEN NULL WHEN p.image_url NOT LIKE 'data:%' THEN p.image_url END " +
+            "AS \"productImageUrl\", p.initial_stock AS \"productInitialStock\"";
+
+    /**
+     * 库存投影列，投影尚未建立时按无出入库记录处理
+     */
+    String STOCK_COLUMNS = "COALESCE(s.currentStock, p.initialStock) AS currentStock, " +
+            "COALESCE(s.totalOutbound, 0) AS totalOutbound";
+
+    /**
+     * 商品列表行：商品列表视图加实时库存
+     */
+    interface ListRow extends ProductView {
+
+        Integer getCurrentStock();
+
+        Integer getTotalOutbound();
+    }
+
+    /**
+     * 商品列表视图行（实体本身也实现 ProductView，查询须返回子接口才会按投影映射）
+     */
+    interface ViewRow extends ProductView {
+    }
+
+    /**
+     * 根据商品名称和规格模糊查询，并关联库存投影（单次JOIN获取实时库存，不读取图片数据），参数须先经 SqlDialect.escapeLike 转义
+     */
+    @Query(value = "SELECT " + VIEW_COLUMNS + ", " + STOCK_COLUMNS +
+           " FROM Product p LEFT JOIN ProductStock s ON s.productId = p.id WHERE " +
+           "(:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%')) ESCAPE '!') AND " +
+           "(:spec IS NULL OR LOWER(p.spec) LIKE LOWER(CONCAT('%', :spec, '%')) ESCAPE '!')",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE " +
+           "(:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%')) ESCAPE '!') AND " +
+           "(:spec IS NULL OR LOWER(p.spec) LIKE LOWER(CONCAT('%', :spec, '%')) ESCAPE '!')")
+    Page<ListRow> findListRowsByNameAndSpecContaining(@Param("name") String name,
+                                                      @Param("spec") String spec,
+                                                      Pageable pageable);
+
+    /**
+     * 根据商品名称和规格模糊查询商品列表视图（不关联库存投影，不读取图片数据），参数须先经 SqlDialect.escapeLike 转义
+     */
+    @Query(value = "SELECT " + VIEW_COLUMNS + " FROM Product p WHERE " +
+           "(:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%')) ESCAPE '!') AND " +
+           "(:spec IS NULL OR LOWER(p.spec) LIKE LOWER(CONCAT('%', :spec, '%')) ESCAPE '!')",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE " +
+           "(:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%')) ESCAPE '!') AND " +
+           "(:spec IS NULL OR LOWER(p.spec) LIKE LOWER(CONCAT('%', :spec, '%')) ESCAPE '!')")
+    Page<ViewRow> findViewsByNameAndSpecContaining(@Param("name") String name,
+                                                   @Param("spec") String spec,
+                                                   Pageable pageable);
+
+    /**
+     * 查询所有商品及其库存投影（用于导出）
+     */
+    @Query("SELECT " + VIEW_COLUMNS + ", " + STOCK_COLUMNS +
+           " FROM Product p LEFT JOIN ProductStock s ON s.productId = p.id ORDER BY p.createdAt DESC")
+    List<ListRow> findAllListRows();
+
+    /**
+     * 查询库存投影中当前库存低于预警值的商品（商品未设置预警值时使用默认预警值）
+     */
+    @Query("SELECT " + VIEW_COLUMNS + ", " + STOCK_COLUMNS +
+           " FROM Product p LEFT JOIN ProductStock s ON s.productId = p.id " +
+           "WHERE COALESCE(s.currentStock, p.initialStock) < COALESCE(p.lowStockThreshold, :threshold) " +
+           "ORDER BY COALESCE(s.currentStock, p.initialStock), p.id")
+    List<ListRow> findLowStockListRows(@Param("threshold") Integer threshold);
+
+    /**
+     * 按ID批量查询商品及其库存投影
+     */
+    @Query("SELECT " + VIEW_COLUMNS + ", " + STOCK_COLUMNS +
+           " FROM Product p LEFT JOIN ProductStock s ON s.productId = p.id WHERE p.id IN :productIds")
+    List<ListRow> findListRowsByIds(@Param("productIds") List<Long> productIds);
+
+    /**
+     * 按ID查询商品及其库存投影（分页，ID来自商品搜索索引）
+     */
+    @Query("SELECT " + VIEW_COLUMNS + ", " + STOCK_COLUMNS +
+           " FROM Product p LEFT JOIN ProductStock s ON s.productId = p.id WHERE p.id IN :productIds")
+    Slice<ListRow> findListRowsByIds(@Param("productIds") Collection<Long> productIds, Pageable pageable);
+
+    /**
+     * 按ID查询商品列表视图（分页，ID来自商品搜索索引，不关联库存投影）
+     */
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Product p WHERE p.id IN :productIds")
+    Slice<ViewRow> findViewsByIds(@Param("productIds") Collection<Long> productIds, Pageable pageable);
+
+    /**
+     * 按ID批量查询商品列表视图（出入库记录组装DTO用）
+     */
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Product p WHERE p.id IN :productIds")
+    List<ViewRow> findViewsByIds(@Param("productIds") Collection<Long> productIds);
+
+    /**
+     * 查询所有商品的列表视图，按创建时间倒序（历史库存用）
+     */
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Product p ORDER BY p.createdAt DESC")
+    List<ViewRow> findAllViews();
+
+    /**
+     * 按名称前缀查询商品的ID、名称、规格、单位（搜索索引未加载时的输入提示），前缀须先经 SqlDialect.escapeLike 转义
+     */
+    @Query("SELECT p.id, p.name, p.spec, p.unit FROM Product p " +
+           "WHERE LOWER(p.name) LIKE CONCAT(LOWER(:prefix), '%') ESCAPE '!' ORDER BY p.name, p.id")
+    List<Object[]> findSuggestionsByNamePrefix(@Param("prefix") String prefix, Pageable pageable);
+
+    /**
+     * 最早的商品创建时间
+     */
+    @Query("SELECT MIN(p.createdAt) FROM Product p")
+    LocalDateTime findMinCreatedAt();
+
+    /**
+     * 查询所有商品的ID、名称、规格、单位（建立商品搜索索引）
+     */
+    @Query("SELECT p.id, p.name, p.spec, p.unit FROM Product p")
+    List<Object[]> findSearchTexts();
+
+    /**
+     * 按ID查询商品的ID、名称、规格、单位（增量更新商品搜索索引）
+     */
+    @Query("SELECT p.id, p.name, p.spec, p.unit FROM Product p WHERE p.id IN :productIds")
+    List<Object[]> findSearchTextsByIds(@Param("productIds") Collection<Long> productIds);
+
+    /**
+     * 按ID顺序分批查询商品ID（用于分批重建库存投影）
+     */
+    @Query("SELECT p.id FROM Product p WHERE p.id > :afterId ORDER BY p.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 查询所有商品ID
+     */
+    @Query("SELECT p.id FROM Product p")
+    List<Long> findAllIds();
+
+    /**
+     * 按ID分批查询图片仍以 base64 保存、尚未转存的商品ID（图片迁移用）
+     */
+    @Query("SELECT p.id FROM Product p WHERE p.id > :afterId AND p.imageHash IS NULL " +
+           "AND p.imageUrl LIKE 'data:%' ORDER BY p.id")
+    List<Long> findIdsWithInlineImageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 查询商品的 image_url（图片迁移用）
+     */
+    @Query("SELECT p.imageUrl FROM Product p WHERE p.id = :id")
+    String findImageUrlById(@Param("id") Long id);
+
+    /**
+     * 按ID分批查询已转存但仍保留 base64 原图的商品ID（清理迁移原图用）
+     */
+    @Query("SELECT p.id FROM Product p WHERE p.id > :afterId AND p.imageHash IS NOT NULL " +
+           "AND p.imageUrl LIKE 'data:%' ORDER BY p.id")
+    List<Long> findIdsWithMigratedImageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 查询商品的图片哈希
+     */
+    @Query("SELECT p.imageHash FROM Product p WHERE p.id = :id")
+    String findImageHashById(@Param("id") Long id);
+
+    /**
+     * 清空已转存商品保留的 base64 原图；图片哈希已变化时不更新
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.imageUrl = NULL WHERE p.id = :id AND p.imageHash = :imageHash " +
+           "AND p.imageUrl LIKE 'data:%'")
+    int clearMigratedImage(@Param("id") Long id, @Param("imageHash") String imageHash);
+
+    /**
+     * 加行锁查询商品
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.id = :productId")
+    Optional<Product> findByIdForUpdate(@Param("productId") Long productId);
+
+    /**
+     * 查询所有商品的库存矩阵基础信息（不加载图片等大字段），排序与历史库存一致
+     */
+    @Query("SELECT p.id, p.name, p.spec, p.unit, p.initialStock, p.price FROM Product p ORDER BY p.createdAt DESC")
+    List<Object[]> findMatrixBasis();
+
+    /**
+     * 查询商品创建时间（不加载图片等大字段）
+     */
+    @Query("SELECT p.createdAt FROM Product p WHERE p.id = :productId")
+    LocalDateTime findCreatedAtById(@Param("productId") Long productId);
+
+    /**
+     * 批量查询商品的初始库存和单价（不加载图片等大字段）
+     */
+    @Query("SELECT p.id, p.initialStock, p.price FROM Product p WHERE p.id IN :productIds")
+    List<Object[]> findStockBasisByIds(@Param("productIds") List<Long> productIds);
+
     /**
      * 查询所有商品（用于导出）
      */
@@ -45,10 +265,4 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * 根据商品名称和规格精确查询
      */
     List<Product> findByNameAndSpec(String name, String spec);
-
-    /**
-     * 查询库存不足的商品（库存小于指定数量）
-     */
-    @Query("SELECT p FROM Product p WHERE p.initialStock < :threshold")
-    List<Product> findLowStockProducts(@Param("threshold") Integer threshold);
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.shelf.repository;
+
+import com.shelf.entity.ProductStock;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 商品库存投影数据访问接口
+ */
+@Repository
+public interface ProductStockRepository extends JpaRepository<ProductStock, Long>, ProductStockRepositoryCustom {
+
+    /**
+     * 加行锁查询单个商品的库存投影（用于增量更新）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM ProductStock s WHERE s.productId = :productId")
+    Optional<ProductStock> findByIdForUpdate(@Param("productId") Long productId);
+
+    /**
+     * 加行锁批量查询库存投影（用于分批重建）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM ProductStock s WHERE s.productId IN :productIds")
+    List<ProductStock> findAllByIdForUpdate(@Param("productIds") List<Long> productIds);
+
+    /**
+     * 锁定全部库存投影行（生成快照期间阻塞并发出入库写入，保证快照与增量回填不遗漏）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM ProductStock s")
+    List<ProductStock> lockAll();
+
+    /**
+     * 统计所有商品的当前库存总量
+     */
+    @Query("SELECT COALESCE(SUM(s.currentStock), 0) FROM ProductStock s")
+    Long sumCurrentStock();
+
+    /**
+     * 统计所有商品的库存总价值
+     */
+    @Query("SELECT COALESCE(SUM(s.stockValue), 0) FROM ProductStock s")
+    BigDecimal sumStockValue();
+
+    /**
+     * 查询内存库存索引所需的最少字段：商品ID、当前库存、单价、库存预警值（不加载商品图片等大字段）
+     */
+    @Query("SELECT s.productId, s.currentStock, p.price, p.lowStockThreshold " +
+           "FROM ProductStock s, Product p WHERE p.id = s.productId")
+    List<Object[]> findIndexRows();
+
+    /**
+     * 按商品ID查询内存库存索引所需的字段（同步其他节点的变化时重新读取）
+     */
+    @Query("SELECT s.productId, s.currentStock, p.price, p.lowStockThreshold " +
+           "FROM ProductStock s, Product p WHERE p.id = s.productId AND s.productId IN :productIds")
+    List<Object[]> findIndexRowsByIds(@Param("productIds") List<Long> productIds);
+
+    /**
+     * 删除已不存在商品的投影记录
+     */
+    @Modifying
+    @Query("DELETE FROM ProductStock s WHERE s.productId NOT IN (SELECT p.id FROM Product p)")
+    int deleteOrphans();
+}
@@ -0,0 +1,14 @@
+package com.shelf.repository;
+
+/**
+ * 库存投影的原生SQL写入（按数据库方言生成，见 {@link ProductStockRepositoryImpl}）
+ */
+public interface ProductStockRepositoryCustom {
+
+    /**
+     * 投影行不存在时插入初始累计数量，已存在时不修改
+     *
+     * @return 是否插入了新行
+     */
+    boolean insertIfAbsent(Long productId, int totalInbound, int totalOutbound);
+}
@@ -0,0 +1,33 @@
+package com.shelf.repository;
+
+import com.shelf.config.SqlDialect;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * 库存投影原生SQL写入实现
+ * 同一商品的并发首次写入都可能发现投影行缺失，插入使用 ON CONFLICT DO NOTHING（MySQL 为 INSERT IGNORE），
+ * 后到的事务等待先到的事务提交后不再插入，不会因主键冲突失败
+ */
+public class ProductStockRepositoryImpl implements ProductStockRepositoryCustom {
+
+    private final String insertIfAbsent;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public ProductStockRepositoryImpl(SqlDialect dialect) {
+        this.insertIfAbsent = dialect.insertIfAbsent("product_stock",
+                "product_id, total_inbound, total_outbound, current_stock, stock_value",
+                ":productId, :totalInbound, :totalOutbound, 0, 0");
+    }
+
+    @Override
+    public boolean insertIfAbsent(Long productId, int totalInbound, int totalOutbound) {
+        return entityManager.createNativeQuery(insertIfAbsent)
+                .setParameter("productId", productId)
+                .setParameter("totalInbound", totalInbound)
+                .setParameter("totalOutbound", totalOutbound)
+                .executeUpdate() > 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.shelf.repository;
+
+import com.shelf.entity.ProductView;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 出入库记录列表关联查询得到的商品字段（{@link ProductRepository#RECORD_PRODUCT_COLUMNS}），不是托管实体
+ * 只包含记录DTO用到的名称、规格、单位、价格、图片和初始库存，其余字段为 null
+ */
+@Getter
+@AllArgsConstructor
+class RecordProduct implements ProductView {
+
+    private final Long id;
+    private final String name;
+    private final String spec;
+    private final String unit;
+    private final BigDecimal price;
+    private final String imageHash;
+    private final String imageUrl;
+    private final Integer initialStock;
+
+    @Override
+    public BigDecimal getAmount() {
+        return null;
+    }
+
+    @Override
+    public Integer getLowStockThreshold() {
+        return null;
+    }
+
+    @Override
+    public LocalDateTime getCreatedAt() {
+        return null;
+    }
+
+    @Override
+    public LocalDateTime getUpdatedAt() {
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.shelf.repository;
+
+import jakarta.persistence.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 原生SQL条件拼接：只拼接实际提供的条件，参数随条件一起记录
+ * 不使用 (:param IS NULL OR ...) 写法，每种条件组合生成各自的SQL文本，数据库按语句分别缓存执行计划并使用对应的索引
+ */
+class SqlPredicates {
+
+    private final List<String> predicates = new ArrayList<>();
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+    /**
+     * 参数不为 null（字符串不为空）时加入条件
+     * 空集合不视为未提供：IN () 不是合法SQL，且把它当作没有条件会放宽查询结果，调用方须自行处理无匹配的情况
+     */
+    SqlPredicates addIfPresent(String predicate, String param, Object value) {
+        if (value == null || value instanceof String && ((String) value).isEmpty()) {
+            return this;
+        }
+        if (value instanceof Collection && ((Collection<?>) value).isEmpty()) {
+            throw new IllegalArgumentException("查询条件 " + param + " 的集合参数不能为空");
+        }
+        predicates.add(predicate);
+        parameters.put(param, value);
+        return this;
+    }
+
+    /**
+     * 无条件加入条件及其参数
+     */
+    SqlPredicates add(String predicate, Map<String, ?> params) {
+        predicates.add(predicate);
+        parameters.putAll(params);
+        return this;
+    }
+
+    /**
+     * WHERE 子句，没有条件时为空字符串
+     */
+    String where() {
+        return predicates.isEmpty() ? "" : " WHERE " + String.join(" AND ", predicates);
+    }
+
+    Query bind(Query query) {
+        parameters.forEach(query::setParameter);
+        return query;
+    }
+}
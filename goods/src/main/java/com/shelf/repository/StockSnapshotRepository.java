@@ -0,0 +1,86 @@
+package com.shelf.repository;
+
+import com.shelf.entity.StockSnapshot;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 库存快照数据访问接口
+ */
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+
+    /**
+     * 查询最近一次快照日期
+     */
+    @Query("SELECT MAX(s.snapshotDate) FROM StockSnapshot s")
+    LocalDate findLatestSnapshotDate();
+
+    /**
+     * 查询指定日期（含）之前最近的快照日期
+     */
+    @Query("SELECT MAX(s.snapshotDate) FROM StockSnapshot s WHERE s.snapshotDate <= :date")
+    LocalDate findLatestSnapshotDateOnOrBefore(@Param("date") LocalDate date);
+
+    /**
+     * 查询指定快照日期所有商品的累计出入库数量
+     */
+    @Query("SELECT s.productId, s.totalInbound, s.totalOutbound FROM StockSnapshot s " +
+           "WHERE s.snapshotDate = :snapshotDate")
+    List<Object[]> findTotalsBySnapshotDate(@Param("snapshotDate") LocalDate snapshotDate);
+
+    /**
+     * 查询指定商品在指定日期（含）之前最近的快照
+     */
+    Optional<StockSnapshot> findFirstByProductIdAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(
+            Long productId, LocalDate date);
+
+    /**
+     * 加锁查询指定日期（含）之后的所有快照日期（每个商品一行，调用方去重）
+     * 共享锁读取最新提交的数据，并阻塞快照任务在该范围内写入；出入库日期通常为当天，范围内一般没有快照
+     */
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT s.snapshotDate FROM StockSnapshot s WHERE s.snapshotDate >= :date")
+    List<LocalDate> findSnapshotDatesFrom(@Param("date") LocalDate date);
+
+    /**
+     * 查询指定日期（含）之前的全部快照日期，按日期排序
+     */
+    @Query("SELECT DISTINCT s.snapshotDate FROM StockSnapshot s WHERE s.snapshotDate <= :date ORDER BY s.snapshotDate")
+    List<LocalDate> findSnapshotDatesUpTo(@Param("date") LocalDate date);
+
+    /**
+     * 查询指定商品在指定日期（含）之后已有快照的日期
+     */
+    @Query("SELECT s.snapshotDate FROM StockSnapshot s WHERE s.productId = :productId AND s.snapshotDate >= :date")
+    List<LocalDate> findSnapshotDatesByProductFrom(@Param("productId") Long productId,
+                                                   @Param("date") LocalDate date);
+
+    /**
+     * 将出入库变化量回填到指定日期（含）之后的所有快照
+     */
+    @Modifying
+    @Query("UPDATE StockSnapshot s SET s.totalInbound = s.totalInbound + :inboundDelta, " +
+           "s.totalOutbound = s.totalOutbound + :outboundDelta " +
+           "WHERE s.productId = :productId AND s.snapshotDate >= :date")
+    int addDeltaFrom(@Param("productId") Long productId,
+                     @Param("date") LocalDate date,
+                     @Param("inboundDelta") int inboundDelta,
+                     @Param("outboundDelta") int outboundDelta);
+
+    /**
+     * 删除指定商品的全部快照
+     */
+    @Modifying
+    @Query("DELETE FROM StockSnapshot s WHERE s.productId = :productId")
+    int deleteByProductId(@Param("productId") Long productId);
+}
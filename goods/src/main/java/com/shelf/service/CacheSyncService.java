@@ -0,0 +1,137 @@
+package com.shelf.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.shelf.config.CacheConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 缓存同步
+ * 事务提交后按商品变化精确维护缓存：商品详情按ID清除，统计值按变化量直接修正，
+ * 历史库存只清除受影响日期（最早业务日期及之后），不再整体清空。
+ * 须在数据版本号递增之前执行，见 {@link DataVersionService}。
+ */
+@Slf4j
+@Service
+@Order(0)
+@RequiredArgsConstructor
+public class CacheSyncService implements DataChangeListener {
+
+    /** 按变化量修正的统计值缓存键 */
+    private static final List<String> STATS_KEYS = List.of("totalStock", "stockValue", "productCount");
+
+    private final CacheManager cacheManager;
+
+    @Override
+    public void onChanges(Collection<ProductChange> changes) {
+        sync(changes, false);
+    }
+
+    /**
+     * 其他节点提交的变化：统计值直接清除，不按变化量修正
+     * 本节点在对方提交之后、通知送达之前从数据库读取并缓存的统计值已包含该变化，再修正会重复计算
+     */
+    @Override
+    public void onRemoteChanges(Collection<ProductChange> changes) {
+        sync(changes, true);
+    }
+
+    @Override
+    public void onReset() {
+        for (String name : cacheManager.getCacheNames()) {
+            Cache<Object, Object> cache = nativeCache(name);
+            if (cache != null) {
+                cache.invalidateAll();
+            }
+        }
+        log.info("库存投影已重建，缓存已全部清空");
+    }
+
+    private void sync(Collection<ProductChange> changes, boolean remote) {
+        int stockDelta = 0;
+        BigDecimal valueDelta = BigDecimal.ZERO;
+        long countDelta = 0L;
+        boolean productInfoChanged = false;
+        boolean inboundChanged = false;
+        boolean outboundChanged = false;
+        LocalDate earliestDate = null;
+
+        Cache<Object, Object> productById = nativeCache(CacheConfig.PRODUCT_BY_ID);
+        for (ProductChange change : changes) {
+            if (productById != null) {
+                productById.invalidate(change.getProductId());
+            }
+            stockDelta += change.getStockDelta();
+            valueDelta = valueDelta.add(change.getValueDelta());
+            if (change.isCreated() != change.isRemoved()) {
+                countDelta += change.isCreated() ? 1 : -1;
+            }
+            productInfoChanged |= change.isCreated() || change.isUpdated() || change.isRemoved();
+            inboundChanged |= change.isInboundChanged();
+            outboundChanged |= change.isOutboundChanged();
+            LocalDate date = change.getEarliestMovementDate();
+            if (date != null && (earliestDate == null || date.isBefore(earliestDate))) {
+                earliestDate = date;
+            }
+        }
+
+        Cache<Object, Object> stats = nativeCache(CacheConfig.STATS);
+        if (stats != null && remote) {
+            stats.invalidateAll(STATS_KEYS);
+        } else if (stats != null) {
+            int finalStockDelta = stockDelta;
+            BigDecimal finalValueDelta = valueDelta;
+            long finalCountDelta = countDelta;
+            stats.asMap().computeIfPresent("totalStock", (key, value) -> (Integer) value + finalStockDelta);
+            stats.asMap().computeIfPresent("stockValue", (key, value) -> ((BigDecimal) value).add(finalValueDelta));
+            stats.asMap().computeIfPresent("productCount", (key, value) -> (Long) value + finalCountDelta);
+        }
+
+        // 商品列表包含每个商品的实时库存，任何变化都会影响；整个缓存区域清除，不依赖具体的缓存键
+        Cache<Object, Object> products = nativeCache(CacheConfig.PRODUCTS);
+        if (products != null) {
+            products.invalidateAll();
+        }
+
+        Cache<Object, Object> history = nativeCache(CacheConfig.HISTORY);
+        if (history != null) {
+            if (productInfoChanged) {
+                // 商品信息（名称、单价、初始库存）出现在每个日期的结果中
+                history.invalidateAll();
+            } else if (earliestDate != null) {
+                LocalDate fromDate = earliestDate;
+                history.asMap().keySet().removeIf(key -> !((LocalDate) key).isBefore(fromDate));
+            }
+        }
+
+        Cache<Object, Object> recordCounts = nativeCache(CacheConfig.RECORD_COUNTS);
+        if (recordCounts != null) {
+            if (productInfoChanged) {
+                // 商品名称变化影响按商品名称筛选的总数，删除商品会同时删除其记录
+                recordCounts.invalidateAll();
+            } else if (inboundChanged || outboundChanged) {
+                boolean finalInbound = inboundChanged;
+                boolean finalOutbound = outboundChanged;
+                recordCounts.asMap().keySet().removeIf(key -> finalInbound && ((String) key).startsWith("inbound|")
+                        || finalOutbound && ((String) key).startsWith("outbound|"));
+            }
+        }
+    }
+
+    /**
+     * 直接操作底层 Caffeine 缓存：事务提交回调中不能再经过事务感知的缓存代理（其操作会被延迟到下一个提交回调而丢失）
+     */
+    @SuppressWarnings("unchecked")
+    private Cache<Object, Object> nativeCache(String name) {
+        org.springframework.cache.Cache cache = cacheManager.getCache(name);
+        return cache != null ? (Cache<Object, Object>) cache.getNativeCache() : null;
+    }
+}
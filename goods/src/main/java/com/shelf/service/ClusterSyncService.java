@@ -0,0 +1,261 @@
+package com.shelf.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 多节点缓存同步（PostgreSQL LISTEN/NOTIFY）
+ * 每个节点保留本地缓存和内存索引；本节点事务提交后把商品变化通过 pg_notify 广播，
+ * 监听线程收到其他节点的消息后转交 {@link DataChangeBus} 按远程变化处理。
+ * 需开启 cache.cluster-sync.enabled=true，且数据库为 PostgreSQL。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "cache.cluster-sync.enabled", havingValue = "true")
+public class ClusterSyncService implements DataChangeListener {
+
+    /** NOTIFY 消息体上限为 8000 字节，留出余量 */
+    private static final int MAX_PAYLOAD_BYTES = 7000;
+    private static final Pattern CHANNEL_PATTERN = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final DataSource dataSource;
+    private final DataChangeBus dataChangeBus;
+    private final ObjectMapper objectMapper;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-sync-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${cache.cluster-sync.channel:shelf_data_change}")
+    private String channel;
+
+    /** 监听连接地址，为空时使用 spring.datasource.url（连接池代理如 pgbouncer 事务模式不支持 LISTEN） */
+    @Value("${cache.cluster-sync.listen-url:}")
+    private String listenUrl;
+
+    @Value("${spring.datasource.url:}")
+    private String datasourceUrl;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    @Value("${cache.cluster-sync.poll-timeout-ms:5000}")
+    private int pollTimeoutMs;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public ClusterSyncService(DataSource dataSource, DataChangeBus dataChangeBus, ObjectMapper objectMapper) {
+        this.dataSource = dataSource;
+        this.dataChangeBus = dataChangeBus;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 集群消息
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ClusterMessage {
+        private String node;
+        private boolean reset;
+        private List<ProductChange> changes;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!CHANNEL_PATTERN.matcher(channel).matches()) {
+            throw new IllegalStateException("集群同步频道名不合法: " + channel);
+        }
+        running = true;
+        listenerThread = new Thread(this::listenLoop, "cluster-sync-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+        log.info("集群缓存同步已启动，节点: {}，频道: {}", nodeId, channel);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+        sender.shutdown();
+        try {
+            sender.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 本节点提交后广播变化
+     */
+    @Override
+    public void onChanges(Collection<ProductChange> changes) {
+        List<ProductChange> copy = new ArrayList<>(changes);
+        sender.execute(() -> publish(copy));
+    }
+
+    @Override
+    public void onReset() {
+        sender.execute(() -> send(new ClusterMessage(nodeId, true, List.of())));
+    }
+
+    /**
+     * 远程消息已由监听线程转发，不再广播
+     */
+    @Override
+    public void onRemoteChanges(Collection<ProductChange> changes) {
+    }
+
+    @Override
+    public void onRemoteReset() {
+    }
+
+    /**
+     * 按消息体大小拆分后发送
+     */
+    private void publish(List<ProductChange> changes) {
+        try {
+            String payload = objectMapper.writeValueAsString(new ClusterMessage(nodeId, false, changes));
+            if (payload.getBytes(StandardCharsets.UTF_8).length <= MAX_PAYLOAD_BYTES || changes.size() == 1) {
+                notify(payload);
+                return;
+            }
+            int middle = changes.size() / 2;
+            publish(changes.subList(0, middle));
+            publish(changes.subList(middle, changes.size()));
+        } catch (Exception e) {
+            log.error("广播数据变化失败，其他节点缓存将在过期后更新", e);
+        }
+    }
+
+    private void send(ClusterMessage message) {
+        try {
+            notify(objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            log.error("广播重置消息失败", e);
+        }
+    }
+
+    /**
+     * 使用独立连接执行 pg_notify（提交回调中不能复用当前事务的连接）
+     */
+    private void notify(String payload) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            statement.setString(1, channel);
+            statement.setString(2, payload);
+            statement.execute();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+
+    /**
+     * 监听线程：断线后重连；重连成功时按远程重置处理，弥补断线期间可能漏收的消息
+     */
+    private void listenLoop() {
+        boolean reconnected = false;
+        long backoffMs = 1000L;
+        while (running) {
+            try (Connection connection = openListenConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+                if (reconnected) {
+                    log.info("集群同步监听已重连，重置本地缓存");
+                    dataChangeBus.resetRemote();
+                }
+                reconnected = true;
+                backoffMs = 1000L;
+
+                Class<?> pgConnectionClass = Class.forName("org.postgresql.PGConnection");
+                Object pgConnection = connection.unwrap(pgConnectionClass);
+                Method getNotifications = pgConnectionClass.getMethod("getNotifications", int.class);
+                Method getParameter = Class.forName("org.postgresql.PGNotification").getMethod("getParameter");
+
+                while (running) {
+                    Object[] notifications = (Object[]) getNotifications.invoke(pgConnection, pollTimeoutMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (Object notification : notifications) {
+                        handle((String) getParameter.invoke(notification));
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("集群同步监听中断，{}ms 后重连: {}", backoffMs, e.getMessage());
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoffMs = Math.min(backoffMs * 2, 30000L);
+            }
+        }
+    }
+
+    private Connection openListenConnection() throws Exception {
+        String url = listenUrl != null && !listenUrl.isBlank() ? listenUrl : datasourceUrl;
+        if (username == null || username.isBlank()) {
+            return DriverManager.getConnection(url);
+        }
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    private void handle(String payload) {
+        try {
+            ClusterMessage message = objectMapper.readValue(payload, ClusterMessage.class);
+            if (nodeId.equals(message.getNode())) {
+                return;
+            }
+            if (message.isReset()) {
+                dataChangeBus.resetRemote();
+            } else if (message.getChanges() != null) {
+                dataChangeBus.dispatchRemote(message.getChanges());
+            }
+        } catch (Exception e) {
+            log.error("处理集群同步消息失败: {}", payload, e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.shelf.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 数据变化总线
+ * 写操作在事务内登记商品变化，按商品合并；事务提交后一次性分发给所有监听器，回滚时丢弃。
+ * 没有活动事务时立即分发。
+ */
+@Slf4j
+@Component
+public class DataChangeBus {
+
+    private final ObjectProvider<DataChangeListener> listeners;
+
+    /** 无事务时的临时缓冲区，登记后立即分发 */
+    private final ThreadLocal<Map<Long, ProductChange>> immediate = ThreadLocal.withInitial(LinkedHashMap::new);
+
+    /** 开始提交（或开始分发）的变化批次数、已分发完毕的批次数，两者相等时没有正在进行的提交 */
+    private final AtomicLong commitsStarted = new AtomicLong();
+    private final AtomicLong commitsFinished = new AtomicLong();
+    /** 当前线程正在分发的批次数（监听器在分发回调内取序号时不计自身所在的批次） */
+    private final ThreadLocal<int[]> ownBatches = ThreadLocal.withInitial(() -> new int[1]);
+
+    public DataChangeBus(ObjectProvider<DataChangeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * 登记库存投影变化（库存和库存价值的变化量、最新单价和预警值）
+     */
+    public void stockChanged(Long productId, int stockDelta, BigDecimal valueDelta,
+                             BigDecimal price, Integer lowStockThreshold) {
+        ProductChange change = changeFor(productId);
+        change.setStockDelta(change.getStockDelta() + stockDelta);
+        change.setValueDelta(change.getValueDelta().add(valueDelta));
+        change.setStockChanged(true);
+        change.setPrice(price);
+        change.setLowStockThreshold(lowStockThreshold);
+        dispatchIfNoTransaction();
+    }
+
+    /**
+     * 登记出入库记录的业务日期
+     */
+    public void movementDated(Long productId, LocalDate date) {
+        if (date == null) {
+            return;
+        }
+        ProductChange change = changeFor(productId);
+        if (change.getEarliestMovementDate() == null || date.isBefore(change.getEarliestMovementDate())) {
+            change.setEarliestMovementDate(date);
+        }
+        dispatchIfNoTransaction();
+    }
+
+    /**
+     * 登记入库记录、出库记录的增删改
+     */
+    public void recordsChanged(Long productId, boolean inbound, boolean outbound) {
+        ProductChange change = changeFor(productId);
+        change.setInboundChanged(change.isInboundChanged() || inbound);
+        change.setOutboundChanged(change.isOutboundChanged() || outbound);
+        dispatchIfNoTransaction();
+    }
+
+    /**
+     * 登记商品新增或修改
+     */
+    public void productSaved(Long productId, boolean created) {
+        ProductChange change = changeFor(productId);
+        if (created) {
+            change.setCreated(true);
+        } else {
+            change.setUpdated(true);
+        }
+        dispatchIfNoTransaction();
+    }
+
+    /**
+     * 登记商品删除
+     */
+    public void productRemoved(Long productId) {
+        changeFor(productId).setRemoved(true);
+        dispatchIfNoTransaction();
+    }
+
+    /**
+     * 库存投影整体重建后通知所有监听器丢弃派生数据
+     */
+    public void reset() {
+        tracked(() -> notifyListeners(DataChangeListener::onReset));
+    }
+
+    /**
+     * 分发其他节点提交的商品变化（由集群同步监听线程调用）
+     */
+    public void dispatchRemote(Collection<ProductChange> changes) {
+        if (!changes.isEmpty()) {
+            tracked(() -> notifyListeners(listener -> listener.onRemoteChanges(changes)));
+        }
+    }
+
+    /**
+     * 分发其他节点的重置通知
+     */
+    public void resetRemote() {
+        tracked(() -> notifyListeners(DataChangeListener::onRemoteReset));
+    }
+
+    /**
+     * 变化序号：没有正在提交或分发的变化时返回已开始的批次数，否则返回-1
+     * 与 {@link #unchangedSince} 配合，判断一段读取期间是否有提交发生；
+     * 在重置、远程变化的分发回调内调用时，当前线程自身正在分发的批次不算作进行中
+     */
+    public long stamp() {
+        long finished = commitsFinished.get();
+        long started = commitsStarted.get();
+        return started - finished == ownBatches.get()[0] ? started : -1L;
+    }
+
+    /**
+     * 取得序号之后是否没有新的提交开始
+     */
+    public boolean unchangedSince(long stamp) {
+        return stamp >= 0 && commitsStarted.get() == stamp;
+    }
+
+    /**
+     * 获取当前事务内该商品的变化记录，首次登记时绑定事务缓冲区并注册提交回调
+     */
+    @SuppressWarnings("unchecked")
+    private ProductChange changeFor(Long productId) {
+        Map<Long, ProductChange> pending;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending = (Map<Long, ProductChange>) TransactionSynchronizationManager.getResource(this);
+            if (pending == null) {
+                Map<Long, ProductChange> buffer = new LinkedHashMap<>();
+                TransactionSynchronizationManager.bindResource(this, buffer);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    private boolean committing;
+
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        committing = true;
+                        commitsStarted.incrementAndGet();
+                    }
+
+                    @Override
+                    public void afterCommit() {
+                        notifyListeners(listener -> listener.onChanges(buffer.values()));
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(DataChangeBus.this);
+                        if (committing) {
+                            commitsFinished.incrementAndGet();
+                        }
+                    }
+                });
+                pending = buffer;
+            }
+        } else {
+            pending = immediate.get();
+        }
+        return pending.computeIfAbsent(productId, ProductChange::new);
+    }
+
+    private void dispatchIfNoTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Map<Long, ProductChange> pending = immediate.get();
+            immediate.remove();
+            dispatch(pending.values());
+        }
+    }
+
+    private void dispatch(Collection<ProductChange> changes) {
+        if (!changes.isEmpty()) {
+            tracked(() -> notifyListeners(listener -> listener.onChanges(changes)));
+        }
+    }
+
+    /**
+     * 无事务的分发、重置和远程变化同样计入提交批次
+     */
+    private void tracked(Runnable action) {
+        int[] own = ownBatches.get();
+        commitsStarted.incrementAndGet();
+        own[0]++;
+        try {
+            action.run();
+        } finally {
+            own[0]--;
+            commitsFinished.incrementAndGet();
+        }
+    }
+
+    private void notifyListeners(Consumer<DataChangeListener> action) {
+        listeners.orderedStream().forEach(listener -> {
+            try {
+                action.accept(listener);
+            } catch (Exception e) {
+                // 已提交的数据不受影响，派生数据由各监听器的过期或重建机制兜底
+                log.error("数据变化通知失败，监听器: {}", listener.getClass().getSimpleName(), e);
+            }
+        });
+    }
+}
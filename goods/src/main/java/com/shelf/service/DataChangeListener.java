@@ -0,0 +1,34 @@
+package com.shelf.service;
+
+import java.util.Collection;
+
+/**
+ * 数据变化监听器，事务提交后由 {@link DataChangeBus} 回调
+ */
+public interface DataChangeListener {
+
+    /**
+     * 一个事务提交后的全部商品变化
+     */
+    void onChanges(Collection<ProductChange> changes);
+
+    /**
+     * 库存投影整体重建后调用，监听方应丢弃全部派生数据
+     */
+    default void onReset() {
+    }
+
+    /**
+     * 其他节点提交的商品变化（集群同步转发），默认与本节点变化同样处理
+     */
+    default void onRemoteChanges(Collection<ProductChange> changes) {
+        onChanges(changes);
+    }
+
+    /**
+     * 其他节点重建了库存投影或本节点可能漏收通知，默认与本节点重置同样处理
+     */
+    default void onRemoteReset() {
+        onReset();
+    }
+}
@@ -0,0 +1,82 @@
+package com.shelf.service;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 数据版本号
+ * 商品（含库存）、入库记录、出库记录各维护一个版本号，事务提交后递增，查询接口据此生成弱 ETag。
+ * 版本号只在本节点内有效，ETag 中带上节点标识，重启或切换节点后不会被误判为未修改。
+ * 排在所有监听器最后执行：版本号递增时缓存和内存索引已经更新完毕。
+ */
+@Service
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class DataVersionService implements DataChangeListener {
+
+    /**
+     * 数据域
+     */
+    public enum Domain {
+        PRODUCTS, INBOUND, OUTBOUND
+    }
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLongArray versions = new AtomicLongArray(Domain.values().length);
+
+    @Override
+    public void onChanges(Collection<ProductChange> changes) {
+        boolean products = false;
+        boolean inbound = false;
+        boolean outbound = false;
+        for (ProductChange change : changes) {
+            products |= change.isStockChanged() || change.isCreated() || change.isUpdated() || change.isRemoved();
+            // 删除商品时数据库可能级联删除其出入库记录
+            inbound |= change.isInboundChanged() || change.isRemoved();
+            outbound |= change.isOutboundChanged() || change.isRemoved();
+        }
+        if (products) {
+            increment(Domain.PRODUCTS);
+        }
+        if (inbound) {
+            increment(Domain.INBOUND);
+        }
+        if (outbound) {
+            increment(Domain.OUTBOUND);
+        }
+    }
+
+    @Override
+    public void onReset() {
+        for (Domain domain : Domain.values()) {
+            increment(domain);
+        }
+    }
+
+    public long getVersion(Domain domain) {
+        return versions.get(domain.ordinal());
+    }
+
+    /**
+     * 生成弱 ETag：节点标识 + 各数据域版本号；daily为true时再带上当天日期（结果与"今天"有关的接口）
+     */
+    public String etag(Domain[] domains, boolean daily) {
+        StringBuilder builder = new StringBuilder("W/\"").append(nodeId);
+        for (Domain domain : domains) {
+            builder.append('-').append(getVersion(domain));
+        }
+        if (daily) {
+            builder.append('-').append(LocalDate.now().toEpochDay());
+        }
+        return builder.append('"').toString();
+    }
+
+    private void increment(Domain domain) {
+        versions.incrementAndGet(domain.ordinal());
+    }
+}
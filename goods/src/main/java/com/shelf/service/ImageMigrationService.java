@@ -0,0 +1,360 @@
+package com.shelf.service;
+
+import com.shelf.entity.Product;
+import com.shelf.repository.InboundRecordRepository;
+import com.shelf.repository.OutboundRecordRepository;
+import com.shelf.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 图片迁移
+ * 把 image_url 中以 base64 保存的旧图片分批转存到图片存储并记录哈希。
+ * 按ID分批查询待迁移的商品，图片在事务外写入并校验，再在独立事务中加锁写入哈希，同一时间只有一张图片在内存中；
+ * 可重复执行，已迁移的商品不会再处理。迁移不删除 image_url 中的原图，确认图片存储可靠后再调用清理步骤置空。
+ * 出入库记录中复制的商品图片同样转存后记录哈希，记录数量大，在单线程的后台线程池中执行（同一时间只有一个任务），
+ * 执行进度通过 getRecordJobStatus 查询，应用关闭时中断。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageMigrationService {
+
+    private final ProductRepository productRepository;
+    private final InboundRecordRepository inboundRecordRepository;
+    private final OutboundRecordRepository outboundRecordRepository;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+    private final DataChangeBus dataChangeBus;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolExecutor recordJobExecutor = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "record-image-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** 最近一次后台记录任务的状态 */
+    private final AtomicInteger recordJobProcessed = new AtomicInteger();
+    private volatile String recordJob;
+    private volatile LocalDateTime recordJobStartedAt;
+    private volatile LocalDateTime recordJobFinishedAt;
+    private volatile Integer recordJobResult;
+    private volatile String recordJobError;
+
+    @PreDestroy
+    public void shutdown() {
+        recordJobExecutor.shutdownNow();
+    }
+
+    /**
+     * 分批迁移商品图片，返回迁移的商品数
+     */
+    public int migrateProductImages(int chunkSize) {
+        int batchSize = Math.max(1, chunkSize);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long startTime = System.currentTimeMillis();
+        long afterId = 0L;
+        int migrated = 0;
+        int failed = 0;
+
+        while (true) {
+            List<Long> productIds = productRepository.findIdsWithInlineImageAfter(afterId, PageRequest.of(0, batchSize));
+            if (productIds.isEmpty()) {
+                break;
+            }
+            for (Long productId : productIds) {
+                try {
+                    if (migrateProduct(productId, transactionTemplate)) {
+                        migrated++;
+                    }
+                } catch (Exception e) {
+                    // 图片数据损坏时保留原数据，继续处理其他商品
+                    failed++;
+                    log.warn("迁移商品图片失败，商品ID: {}，原因: {}", productId, e.getMessage());
+                }
+            }
+            afterId = productIds.get(productIds.size() - 1);
+        }
+
+        log.info("商品图片迁移完成，迁移: {}，失败: {}，耗时: {}ms",
+                migrated, failed, System.currentTimeMillis() - startTime);
+        return migrated;
+    }
+
+    /**
+     * 在事务外转存并校验图片，再加锁写入哈希（保留 image_url 中的原图）；商品已被修改或事务失败时删除本次新建的图片文件
+     */
+    private boolean migrateProduct(Long productId, TransactionTemplate transactionTemplate) {
+        String imageUrl = productRepository.findImageUrlById(productId);
+        if (!imageStorageService.isDataUrl(imageUrl)) {
+            return false;
+        }
+        ImageStorageService.StoredImage image = imageStorageService.storeDataUrl(imageUrl);
+        boolean done = false;
+        try {
+            if (!imageStorageService.verify(image.getHash())) {
+                throw new RuntimeException("图片写入后校验失败: " + image.getHash());
+            }
+            done = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                Product product = productRepository.findByIdForUpdate(productId).orElse(null);
+                if (product == null || product.getImageHash() != null || !imageUrl.equals(product.getImageUrl())) {
+                    return false;
+                }
+                product.setImageHash(image.getHash());
+                productRepository.save(product);
+                imageVariantService.generateAfterCommit(image.getHash());
+                dataChangeBus.productSaved(productId, false);
+                return true;
+            }));
+            return done;
+        } finally {
+            if (!done) {
+                imageStorageService.discard(image);
+            }
+        }
+    }
+
+    /**
+     * 清理已迁移商品保留的 base64 原图：重新校验图片文件后才置空 image_url，返回清理的商品数
+     * 商品接口已按哈希返回图片，置空原图不改变接口数据，无需发布数据变化
+     */
+    public int purgeMigratedProductImages(int chunkSize) {
+        int purged = purge("商品", chunkSize, new AtomicInteger(), productRepository::findIdsWithMigratedImageAfter,
+                productRepository::findImageHashById, productRepository::clearMigratedImage);
+        log.info("商品迁移原图清理完成，清理: {}", purged);
+        return purged;
+    }
+
+    /**
+     * 在后台分批迁移出入库记录中复制的图片，已有迁移在执行时返回false
+     */
+    public boolean startRecordImageMigration(int chunkSize) {
+        return startInBackground("出入库记录图片迁移", () -> migrateRecordImages(chunkSize));
+    }
+
+    /**
+     * 在后台分批清理已迁移出入库记录中复制的图片，已有迁移或清理在执行时返回false
+     */
+    public boolean startRecordImagePurge(int chunkSize) {
+        return startInBackground("出入库记录迁移原图清理", () -> purgeMigratedRecordImages(chunkSize));
+    }
+
+    /**
+     * 提交后台记录任务，线程池中已有任务在执行时返回false
+     */
+    private synchronized boolean startInBackground(String label, Supplier<Integer> job) {
+        if (recordJob != null && recordJobFinishedAt == null) {
+            return false;
+        }
+        recordJob = label;
+        recordJobProcessed.set(0);
+        recordJobStartedAt = LocalDateTime.now();
+        recordJobFinishedAt = null;
+        recordJobResult = null;
+        recordJobError = null;
+        try {
+            recordJobExecutor.execute(() -> {
+                try {
+                    recordJobResult = job.get();
+                } catch (Exception e) {
+                    recordJobError = e.getMessage();
+                    log.error("{}失败", label, e);
+                } finally {
+                    recordJobFinishedAt = LocalDateTime.now();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 上一个任务的线程尚未回到线程池，或应用正在关闭
+            recordJobError = "后台任务未能启动，请稍后重试";
+            recordJobFinishedAt = LocalDateTime.now();
+            return false;
+        }
+    }
+
+    /**
+     * 最近一次后台记录任务的状态：任务名称、是否在执行、开始和结束时间、已处理记录数、迁移或清理的记录数、失败原因
+     */
+    public Map<String, Object> getRecordJobStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("job", recordJob);
+        status.put("running", recordJob != null && recordJobFinishedAt == null);
+        status.put("startedAt", recordJobStartedAt);
+        status.put("finishedAt", recordJobFinishedAt);
+        status.put("processed", recordJobProcessed.get());
+        status.put("result", recordJobResult);
+        status.put("error", recordJobError);
+        return status;
+    }
+
+    /**
+     * 分批迁移出入库记录中的图片（只写入哈希，原图保留到清理步骤），返回迁移的记录数
+     */
+    public int migrateRecordImages(int chunkSize) {
+        long startTime = System.currentTimeMillis();
+        int inbound = migrateRecords("入库记录", chunkSize, recordJobProcessed,
+                inboundRecordRepository::findIdsWithCopiedImageAfter,
+                inboundRecordRepository::findImageUrlById,
+                inboundRecordRepository::assignImageHash);
+        int outbound = migrateRecords("出库记录", chunkSize, recordJobProcessed,
+                outboundRecordRepository::findIdsWithCopiedImageAfter,
+                outboundRecordRepository::findImageUrlById,
+                outboundRecordRepository::assignImageHash);
+        log.info("出入库记录图片迁移完成，入库记录: {}，出库记录: {}，耗时: {}ms",
+                inbound, outbound, System.currentTimeMillis() - startTime);
+        return inbound + outbound;
+    }
+
+    /**
+     * 分批清理已迁移出入库记录中复制的图片，返回清理的记录数
+     * 释放的空间需要数据库整理表后才会归还（见 add_record_image_hash_column.sql）
+     */
+    public int purgeMigratedRecordImages(int chunkSize) {
+        int inbound = purge("入库记录", chunkSize, recordJobProcessed, inboundRecordRepository::findIdsWithMigratedImageAfter,
+                inboundRecordRepository::findImageHashById, inboundRecordRepository::clearMigratedImage);
+        int outbound = purge("出库记录", chunkSize, recordJobProcessed, outboundRecordRepository::findIdsWithMigratedImageAfter,
+                outboundRecordRepository::findImageHashById, outboundRecordRepository::clearMigratedImage);
+        log.info("出入库记录迁移原图清理完成，入库记录: {}，出库记录: {}", inbound, outbound);
+        return inbound + outbound;
+    }
+
+    /**
+     * 按ID分批迁移一张记录表，每条记录单独读取图片并在独立事务中更新，同一时间只有一张图片在内存中
+     * 记录只用于展示图片，不影响库存和缓存，无需发布数据变化
+     */
+    private int migrateRecords(String label, int chunkSize, AtomicInteger processed,
+                               BiFunction<Long, PageRequest, List<Long>> findIds,
+                               Function<Long, String> findImageUrl,
+                               BiFunction<Long, String, Integer> assign) {
+        int batchSize = Math.max(1, chunkSize);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long afterId = 0L;
+        int migrated = 0;
+        int failed = 0;
+
+        while (true) {
+            checkInterrupted();
+            List<Long> recordIds = findIds.apply(afterId, PageRequest.of(0, batchSize));
+            if (recordIds.isEmpty()) {
+                break;
+            }
+            for (Long recordId : recordIds) {
+                processed.incrementAndGet();
+                try {
+                    if (migrateRecord(recordId, transactionTemplate, findImageUrl, assign)) {
+                        migrated++;
+                    }
+                } catch (Exception e) {
+                    // 图片数据损坏时保留原数据，继续处理其他记录
+                    failed++;
+                    log.warn("迁移{}图片失败，记录ID: {}，原因: {}", label, recordId, e.getMessage());
+                }
+            }
+            afterId = recordIds.get(recordIds.size() - 1);
+        }
+
+        if (failed > 0) {
+            log.warn("{}图片迁移失败: {}", label, failed);
+        }
+        return migrated;
+    }
+
+    /**
+     * base64 图片转存并校验后写入哈希，本系统图片地址直接解析哈希；记录已被修改或事务失败时删除本次新建的图片文件
+     */
+    private boolean migrateRecord(Long recordId, TransactionTemplate transactionTemplate,
+                                  Function<Long, String> findImageUrl,
+                                  BiFunction<Long, String, Integer> assign) {
+        String imageUrl = findImageUrl.apply(recordId);
+        ImageStorageService.StoredImage image = null;
+        String hash;
+        if (imageStorageService.isDataUrl(imageUrl)) {
+            image = imageStorageService.storeDataUrl(imageUrl);
+            hash = image.getHash();
+        } else {
+            hash = imageStorageService.hashOf(imageUrl);
+        }
+        boolean done = false;
+        try {
+            if (hash == null || !imageStorageService.verify(hash)) {
+                return false;
+            }
+            Integer updated = transactionTemplate.execute(status -> assign.apply(recordId, hash));
+            done = updated != null && updated > 0;
+            return done;
+        } finally {
+            if (!done) {
+                imageStorageService.discard(image);
+            }
+        }
+    }
+
+    /**
+     * 按ID分批清理一张表中已迁移的原图：图片文件重新校验通过后才在独立事务中置空 image_url，校验失败的保留原图
+     */
+    private int purge(String label, int chunkSize, AtomicInteger processed,
+                      BiFunction<Long, PageRequest, List<Long>> findIds,
+                      Function<Long, String> findImageHash,
+                      BiFunction<Long, String, Integer> clear) {
+        int batchSize = Math.max(1, chunkSize);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long afterId = 0L;
+        int purged = 0;
+        int unverified = 0;
+
+        while (true) {
+            checkInterrupted();
+            List<Long> ids = findIds.apply(afterId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            for (Long id : ids) {
+                processed.incrementAndGet();
+                String hash = findImageHash.apply(id);
+                if (hash == null || !imageStorageService.verify(hash)) {
+                    unverified++;
+                    log.warn("{}图片文件缺失或校验失败，保留原图，ID: {}，哈希: {}", label, id, hash);
+                    continue;
+                }
+                Integer cleared = transactionTemplate.execute(status -> clear.apply(id, hash));
+                if (cleared != null && cleared > 0) {
+                    purged++;
+                }
+            }
+            afterId = ids.get(ids.size() - 1);
+        }
+
+        if (unverified > 0) {
+            log.warn("{}图片校验失败未清理: {}", label, unverified);
+        }
+        return purged;
+    }
+
+    /**
+     * 应用关闭时线程池中断后台任务，在批次之间停止
+     */
+    private void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new RuntimeException("任务已中断");
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.shelf.service;
+
+import com.shelf.entity.Product;
+import com.shelf.entity.ProductView;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * 图片存储（按内容寻址）
+ * 图片按 SHA-256 哈希命名保存在本地目录（前两级哈希分目录），相同内容只保存一份；
+ * 数据库只保存哈希值，图片通过 /api/images/{hash} 访问。写入时边读边计算哈希，内存占用与图片大小无关。
+ */
+@Slf4j
+@Service
+public class ImageStorageService {
+
+    public static final String IMAGE_PATH = "/api/images/";
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Path root;
+    private final String baseUrl;
+    private final long maxSizeBytes;
+
+    public ImageStorageService(@Value("${image.storage.dir:data/images}") String storageDir,
+                               @Value("${image.base-url:}") String baseUrl,
+                               @Value("${image.max-size-bytes:5242880}") long maxSizeBytes,
+                               @Value("${image.storage.require-persistent-dir:false}") boolean requirePersistentDir)
+            throws IOException {
+        // 生产环境图片只保存在该目录，未配置持久化目录（绝对路径）时拒绝启动，避免重新部署后图片丢失
+        if (requirePersistentDir && (storageDir.isBlank() || !Paths.get(storageDir).isAbsolute())) {
+            throw new RuntimeException("未配置持久化的图片存储目录，请通过 IMAGE_STORAGE_DIR 指定挂载磁盘的绝对路径");
+        }
+        this.root = Paths.get(storageDir).toAbsolutePath().normalize();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.maxSizeBytes = maxSizeBytes;
+        Files.createDirectories(root.resolve("tmp"));
+        log.info("图片存储目录: {}", root);
+    }
+
+    /**
+     * 已保存的图片（created 表示文件由本次保存新建，而不是复用已有内容）
+     */
+    @Data
+    @AllArgsConstructor
+    public static class StoredImage {
+        private String hash;
+        private String contentType;
+        private long size;
+        private boolean created;
+    }
+
+    /**
+     * 保存图片流：写入临时文件的同时计算哈希并校验大小和格式，内容已存在时直接复用
+     */
+    public StoredImage store(InputStream input) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(root.resolve("tmp"), "upload-", ".tmp");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] header = new byte[12];
+            int headerLength = 0;
+            long size = 0;
+            try (OutputStream output = Files.newOutputStream(temp, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxSizeBytes) {
+                        throw new RuntimeException("图片大小超过限制: " + maxSizeBytes / 1024 + "KB");
+                    }
+                    if (headerLength < header.length) {
+                        int copied = Math.min(read, header.length - headerLength);
+                        System.arraycopy(buffer, 0, header, headerLength, copied);
+                        headerLength += copied;
+                        // 文件头读满后立即校验格式，不是图片时不再继续接收
+                        if (headerLength == header.length && detectContentType(header, headerLength) == null) {
+                            throw new RuntimeException("不支持的图片格式，仅支持 PNG、JPEG、GIF、WEBP");
+                        }
+                    }
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                }
+            }
+            String contentType = detectContentType(header, headerLength);
+            if (contentType == null) {
+                throw new RuntimeException("不支持的图片格式，仅支持 PNG、JPEG、GIF、WEBP");
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = pathOf(hash);
+            boolean created = false;
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                    created = true;
+                } catch (FileAlreadyExistsException e) {
+                    // 并发上传了相同内容
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                    created = true;
+                }
+            }
+            return new StoredImage(hash, contentType, size, created);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("保存图片失败: " + e.getMessage(), e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.debug("删除临时图片文件失败: {}", temp);
+                }
+            }
+        }
+    }
+
+    /**
+     * 保存 base64 data URL（data:image/png;base64,...）
+     */
+    public StoredImage storeDataUrl(String dataUrl) {
+        int comma = dataUrl.indexOf(',');
+        if (!isDataUrl(dataUrl) || comma < 0 || !dataUrl.substring(0, comma).endsWith(";base64")) {
+            throw new RuntimeException("图片数据格式不正确");
+        }
+        byte[] encoded = dataUrl.substring(comma + 1).getBytes(StandardCharsets.US_ASCII);
+        return store(Base64.getMimeDecoder().wrap(new ByteArrayInputStream(encoded)));
+    }
+
+    public boolean isDataUrl(String value) {
+        return value != null && value.startsWith("data:");
+    }
+
+    /**
+     * 商品图片的访问地址：已按哈希保存时返回图片接口地址，否则返回原图片地址
+     */
+    public String imageUrlOf(ProductView product) {
+        return product.getImageHash() != null ? urlOf(product.getImageHash()) : product.getImageUrl();
+    }
+
+    /**
+     * 出入库记录的图片地址：优先使用记录保存的图片哈希；未迁移的旧记录使用其中的外部图片地址，
+     * 仍是 base64 或没有图片时使用商品当前图片（product 为批量或关联查询得到的商品，可为空）
+     */
+    public String recordImageUrl(String imageHash, String imageUrl, ProductView product) {
+        if (imageHash != null) {
+            return urlOf(imageHash);
+        }
+        if (imageUrl != null && !isDataUrl(imageUrl)) {
+            return imageUrl;
+        }
+        return product != null ? imageUrlOf(product) : null;
+    }
+
+    /**
+     * 按前端提交的图片地址设置商品图片
+     * base64 数据保存为文件后只记录哈希；本系统的图片地址解析出哈希；其他地址按外部图片地址保存
+     */
+    public void assignImage(Product product, String imageUrl) {
+        if (imageUrl == null || imageUrl.isBlank()) {
+            product.setImageHash(null);
+            product.setImageUrl(null);
+        } else if (isDataUrl(imageUrl)) {
+            product.setImageHash(storeDataUrl(imageUrl).getHash());
+            product.setImageUrl(null);
+        } else if (hashOf(imageUrl) != null) {
+            String hash = hashOf(imageUrl);
+            if (!hash.equals(product.getImageHash()) && !exists(hash)) {
+                throw new RuntimeException("图片不存在: " + hash);
+            }
+            product.setImageHash(hash);
+            product.setImageUrl(null);
+        } else {
+            product.setImageHash(null);
+            product.setImageUrl(imageUrl);
+        }
+    }
+
+    /**
+     * 图片访问地址
+     */
+    public String urlOf(String hash) {
+        return hash != null ? baseUrl + IMAGE_PATH + hash : null;
+    }
+
+    /**
+     * 从图片访问地址中解析哈希，不是本系统的图片地址时返回null
+     */
+    public String hashOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        int index = url.lastIndexOf(IMAGE_PATH);
+        if (index < 0) {
+            return null;
+        }
+        String hash = url.substring(index + IMAGE_PATH.length());
+        return isValidHash(hash) ? hash : null;
+    }
+
+    /**
+     * 图片文件路径，哈希不合法或文件不存在时返回null
+     */
+    public Path resolve(String hash) {
+        if (!isValidHash(hash)) {
+            return null;
+        }
+        Path path = pathOf(hash);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    public boolean exists(String hash) {
+        return resolve(hash) != null;
+    }
+
+    /**
+     * 校验已保存的图片：文件存在且重新计算的内容哈希与文件名一致
+     */
+    public boolean verify(String hash) {
+        Path path = resolve(hash);
+        if (path == null) {
+            return false;
+        }
+        try (InputStream input = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return hash.equals(HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.warn("校验图片失败: {}，原因: {}", hash, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 删除本次保存新建、最终没有被引用的图片（如事务回滚或数据已被修改），复用的已有图片不删除
+     */
+    public void discard(StoredImage image) {
+        if (image == null || !image.isCreated()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(pathOf(image.getHash()));
+        } catch (IOException e) {
+            log.warn("删除未引用的图片失败: {}，原因: {}", image.getHash(), e.getMessage());
+        }
+    }
+
+    /**
+     * 图片尺寸变体的文件路径（文件不一定存在），哈希不合法时返回null
+     */
+    public Path variantPathOf(String hash, String variant) {
+        if (!isValidHash(hash)) {
+            return null;
+        }
+        return root.resolve("variants").resolve(variant)
+                .resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    /**
+     * 按文件头识别图片类型
+     */
+    public String contentType(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // 读满文件头
+            }
+            String contentType = detectContentType(header.array(), header.position());
+            return contentType != null ? contentType : "application/octet-stream";
+        } catch (IOException e) {
+            return "application/octet-stream";
+        }
+    }
+
+    private Path pathOf(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private static boolean isValidHash(String hash) {
+        return hash != null && HASH_PATTERN.matcher(hash).matches();
+    }
+
+    private static String detectContentType(byte[] header, int length) {
+        if (length >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return "image/png";
+        }
+        if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+            return "image/gif";
+        }
+        if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "image/webp";
+        }
+        return null;
+    }
+}
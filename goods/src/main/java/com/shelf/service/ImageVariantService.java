@@ -0,0 +1,297 @@
+package com.shelf.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图片尺寸变体（缩略图、中图）
+ * 图片上传后在有界线程池中异步生成，按原图哈希保存在图片存储的 variants 目录，内容同样不会变化；
+ * 队列已满或尚未生成时，变体接口先返回原图并补交生成任务。WEBP 等 ImageIO 不支持的格式以原图作为变体。
+ */
+@Slf4j
+@Service
+public class ImageVariantService {
+
+    /**
+     * 尺寸变体，地址为 /api/images/{hash}/{path}
+     */
+    public enum Variant {
+        THUMB("thumb"),
+        MEDIUM("medium");
+
+        private final String path;
+
+        Variant(String path) {
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public static Variant fromPath(String path) {
+            for (Variant variant : values()) {
+                if (variant.path.equals(path)) {
+                    return variant;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ImageStorageService imageStorageService;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    @Value("${image.variant.thumb-size:96}")
+    private int thumbSize;
+
+    @Value("${image.variant.medium-size:480}")
+    private int mediumSize;
+
+    /** 解码前按尺寸校验，防止小文件解码出超大图片占满内存 */
+    @Value("${image.variant.max-pixels:40000000}")
+    private long maxPixels;
+
+    public ImageVariantService(ImageStorageService imageStorageService,
+                               @Value("${image.variant.threads:2}") int threads,
+                               @Value("${image.variant.queue-capacity:200}") int queueCapacity) {
+        this.imageStorageService = imageStorageService;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+            Thread thread = new Thread(runnable, "image-variant-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 图片地址对应的变体地址：本系统的图片地址追加变体路径，外部地址原样返回；
+     * 未迁移的 base64 图片返回null，避免同一份图片数据在响应中重复多次，前端回退使用 imageUrl
+     */
+    public String variantUrl(String imageUrl, Variant variant) {
+        if (imageStorageService.isDataUrl(imageUrl)) {
+            return null;
+        }
+        return imageStorageService.hashOf(imageUrl) != null ? imageUrl + "/" + variant.getPath() : imageUrl;
+    }
+
+    /**
+     * 已生成的变体文件，尚未生成时返回null
+     */
+    public Path resolve(String hash, Variant variant) {
+        Path path = imageStorageService.variantPathOf(hash, variant.getPath());
+        return path != null && Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * 当前事务提交后再提交生成任务，事务回滚时不生成；没有事务时立即提交
+     */
+    public void generateAfterCommit(String hash) {
+        if (hash == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            generateAsync(hash);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                generateAsync(hash);
+            }
+        });
+    }
+
+    /**
+     * 提交生成任务，同一图片同时只排队一次；队列已满时放弃，下次访问变体时再提交
+     */
+    public void generateAsync(String hash) {
+        if (hash == null || !pending.add(hash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(hash);
+                } catch (Exception e) {
+                    log.warn("生成图片缩略图失败，图片: {}，原因: {}", hash, e.getMessage());
+                } finally {
+                    pending.remove(hash);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(hash);
+            log.debug("缩略图生成队列已满，图片: {}", hash);
+        }
+    }
+
+    /**
+     * 生成全部变体：按最大变体尺寸的两倍降采样解码，再逐个缩放写出
+     */
+    void generate(String hash) throws IOException {
+        Path source = imageStorageService.resolve(hash);
+        if (source == null || allGenerated(hash)) {
+            return;
+        }
+        BufferedImage image = null;
+        try {
+            image = read(source, 2 * Math.max(thumbSize, mediumSize));
+        } catch (Exception e) {
+            log.warn("解码图片失败，变体使用原图，图片: {}，原因: {}", hash, e.getMessage());
+        }
+        // 无法解码时以原图作为变体，避免每次访问都重新尝试
+        boolean alpha = image != null && image.getColorModel().hasAlpha();
+        for (Variant variant : Variant.values()) {
+            if (resolve(hash, variant) == null) {
+                write(source, image != null ? scale(image, sizeOf(variant)) : null, alpha,
+                        imageStorageService.variantPathOf(hash, variant.getPath()), sizeOf(variant));
+            }
+        }
+    }
+
+    private boolean allGenerated(String hash) {
+        for (Variant variant : Variant.values()) {
+            if (resolve(hash, variant) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int sizeOf(Variant variant) {
+        return variant == Variant.THUMB ? thumbSize : mediumSize;
+    }
+
+    /**
+     * 读取图片，尺寸过大时用降采样解码；不支持的格式返回null
+     */
+    private BufferedImage read(Path source, int targetSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new RuntimeException("图片尺寸过大: " + width + "x" + height);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / targetSize);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 按长边等比缩放，原图不超过目标尺寸时不缩放
+     */
+    private BufferedImage scale(BufferedImage image, int size) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (Math.max(width, height) <= size) {
+            return null;
+        }
+        double ratio = (double) size / Math.max(width, height);
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * 写入临时文件后原子移动到目标位置；原图已足够小或无法解码时（scaled 为空）直接复制原图
+     * 有透明通道的图片保存为 PNG，其余保存为 JPEG
+     */
+    private void write(Path source, BufferedImage scaled, boolean alpha, Path target, int size) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), "variant-", ".tmp");
+        try {
+            if (scaled == null) {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            } else if (alpha) {
+                ImageIO.write(scaled, "png", temp.toFile());
+            } else {
+                writeJpeg(scaled, temp);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // 并发生成了相同变体
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.debug("已生成图片变体: {}，尺寸: {}", target.getFileName(), size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.85f);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -1,20 +1,27 @@
 package com.shelf.service;
 
+import com.shelf.config.CacheConfig;
+import com.shelf.dto.CursorResponse;
 import com.shelf.dto.InboundRecordDTO;
 import com.shelf.entity.InboundRecord;
+import com.shelf.entity.InboundRecordView;
 import com.shelf.entity.Product;
+import com.shelf.entity.ProductView;
+import com.shelf.repository.InboundRecordFilter;
 import com.shelf.repository.InboundRecordRepository;
 import com.shelf.repository.ProductRepository;
+import com.shelf.util.FieldSelection;
+import com.shelf.util.RecordCursor;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -26,121 +33,101 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class InboundRecordService {
 
+    /** 需要查询关联商品的字段（记录没有图片时使用商品图片） */
+    private static final String[] PRODUCT_FIELDS = {"productName", "productSpec", "productUnit", "productPrice",
+            "productInitialStock", "productCurrentStock", "totalAmount", "imageUrl", "thumbnailUrl", "mediumUrl"};
+
     private final InboundRecordRepository inboundRecordRepository;
     private final ProductRepository productRepository;
+    private final ProductStockService productStockService;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+    private final SingleFlightCache singleFlightCache;
+    private final TableStatsService tableStatsService;
+    private final ProductSearchIndexService productSearchIndexService;
 
     /**
-     * 分页查询入库记录 - PostgreSQL兼容版本
+     * 入库记录列表是否支持按该字段排序
      */
-    @Transactional(readOnly = true)
-    public Page<InboundRecordDTO> getInboundRecords(Long productId, LocalDate startDate, LocalDate endDate, Pageable pageable) {
-        try {
-            // 转换日期为String，PostgreSQL需要明确的类型
-            String startDateStr = startDate != null ? startDate.toString() : null;
-            String endDateStr = endDate != null ? endDate.toString() : null;
-            
-            // 使用PostgreSQL兼容的查询
-            Page<InboundRecord> records = inboundRecordRepository.findByMultipleConditions(
-                    productId, startDateStr, endDateStr, pageable);
-            return records.map(this::convertToDTO);
-        } catch (Exception e) {
-            System.err.println("PostgreSQL兼容查询失败，尝试原生SQL查询: " + e.getMessage());
-            
-            try {
-                // 降级到原生SQL查询
-                return getInboundRecordsWithNativeQuery(productId, startDate, endDate, pageable);
-            } catch (Exception e2) {
-                System.err.println("原生SQL查询失败，使用简单查询: " + e2.getMessage());
-                
-                try {
-                    // 最后降级到简单查询
-                    Page<InboundRecord> records = inboundRecordRepository.findAllOrderByIdDesc(pageable);
-                    return records.map(this::convertToDTO);
-                } catch (Exception e3) {
-                    throw new RuntimeException("查询入库记录失败: " + e.getMessage(), e);
-                }
-            }
-        }
+    public boolean isSortable(String field) {
+        return InboundRecordRepository.SORT_COLUMNS.containsKey(field);
     }
 
     /**
-     * 使用原生SQL查询入库记录（PostgreSQL兼容版本）
+     * 分页查询入库记录
      */
     @Transactional(readOnly = true)
-    private Page<InboundRecordDTO> getInboundRecordsWithNativeQuery(Long productId, LocalDate startDate, LocalDate endDate, Pageable pageable) {
-        // 将LocalDate转换为String，PostgreSQL需要
-        String startDateStr = startDate != null ? startDate.toString() : null;
-        String endDateStr = endDate != null ? endDate.toString() : null;
-        
-        // 计算总数
-        Long total = inboundRecordRepository.countByMultipleConditionsNative(productId, startDateStr, endDateStr);
-        
-        // 查询数据
-        int limit = pageable.getPageSize();
-        int offset = (int) pageable.getOffset();
-        List<InboundRecord> records = inboundRecordRepository.findByMultipleConditionsNative(
-                productId, startDateStr, endDateStr, limit, offset);
-        
-        // 转换为DTO
-        List<InboundRecordDTO> dtos = records.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-        
-        return new PageImpl<>(dtos, pageable, total);
+    public Slice<InboundRecordDTO> getInboundRecords(Long productId, LocalDate startDate, LocalDate endDate, Pageable pageable, FieldSelection fields) {
+        return getInboundRecords(productId, null, startDate, endDate, pageable, fields);
     }
 
     /**
-     * 分页查询入库记录（支持商品名称搜索）- PostgreSQL兼容版本
+     * 分页查询入库记录（支持商品名称搜索）
      */
     @Transactional(readOnly = true)
-    public Page<InboundRecordDTO> getInboundRecords(Long productId, String productName, LocalDate startDate, LocalDate endDate, Pageable pageable) {
+    public Slice<InboundRecordDTO> getInboundRecords(Long productId, String productName, LocalDate startDate, LocalDate endDate, Pageable pageable, FieldSelection fields) {
         try {
-            // 转换日期为String，PostgreSQL需要明确的类型
-            String startDateStr = startDate != null ? startDate.toString() : null;
-            String endDateStr = endDate != null ? endDate.toString() : null;
-            
-            // 使用PostgreSQL兼容的商品名称搜索查询
-            Page<InboundRecord> records = inboundRecordRepository.findByMultipleConditionsWithProductName(
-                    productId, productName, startDateStr, endDateStr, pageable);
-            return records.map(this::convertToDTO);
+            InboundRecordFilter filter = toFilter(productId, productName, startDate, endDate);
+            if (filter == null) {
+                return new SliceImpl<>(Collections.emptyList(), pageable, false);
+            }
+            // 需要商品字段时关联商品表一次查出，不再按商品ID另行查询
+            Slice<? extends InboundRecordRepository.ListRow> records = fields.includesAny(PRODUCT_FIELDS)
+                    ? inboundRecordRepository.findWithProductByFilter(filter, pageable)
+                    : inboundRecordRepository.findByFilter(filter, pageable);
+            return records.map(this::convertListRow);
         } catch (Exception e) {
-            System.err.println("PostgreSQL商品名称查询失败，尝试备用查询: " + e.getMessage());
-            
-            try {
-                // 降级到原生SQL查询方法
-                return getInboundRecordsWithProductNameNative(productId, productName, startDate, endDate, pageable);
-            } catch (Exception e2) {
-                System.err.println("备用查询失败: " + e2.getMessage());
-                throw new RuntimeException("查询入库记录失败: " + e.getMessage(), e);
+            throw new RuntimeException("查询入库记录失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 统计满足条件的入库记录数：精确总数按规范化后的查询条件短期缓存，写入入库记录时清除；
+     * estimate 为 true 且没有筛选条件时使用数据库统计信息估算（不扫描表），无法估算时仍返回精确总数
+     */
+    public long countInboundRecords(Long productId, String productName, LocalDate startDate, LocalDate endDate,
+                                    boolean estimate) {
+        String name = productName != null && !productName.trim().isEmpty() ? productName.trim().toLowerCase() : null;
+        if (estimate && productId == null && name == null && startDate == null && endDate == null) {
+            Long estimated = tableStatsService.estimateRowCount("inbound_record");
+            if (estimated != null) {
+                return estimated;
             }
         }
+        String key = "inbound|" + productId + "|" + name + "|" + startDate + "|" + endDate;
+        return singleFlightCache.get(CacheConfig.RECORD_COUNTS, key, () -> {
+            InboundRecordFilter filter = toFilter(productId, name, startDate, endDate);
+            return filter != null ? inboundRecordRepository.countByFilter(filter) : 0L;
+        });
     }
 
     /**
-     * 使用PostgreSQL兼容的原生SQL查询入库记录（支持商品名称搜索）
+     * 游标分页查询入库记录（按入库日期、ID倒序），多取一条判断是否还有下一页
      */
     @Transactional(readOnly = true)
-    private Page<InboundRecordDTO> getInboundRecordsWithProductNameNative(Long productId, String productName, LocalDate startDate, LocalDate endDate, Pageable pageable) {
-        // 将LocalDate转换为String，PostgreSQL需要
-        String startDateStr = startDate != null ? startDate.toString() : null;
-        String endDateStr = endDate != null ? endDate.toString() : null;
-        
-        // 计算总数
-        Long total = inboundRecordRepository.countByMultipleConditionsWithProductNameNative(
-                productId, productName, startDateStr, endDateStr);
-        
-        // 查询数据
-        int limit = pageable.getPageSize();
-        int offset = (int) pageable.getOffset();
-        List<InboundRecord> records = inboundRecordRepository.findByMultipleConditionsWithProductNameNative(
-                productId, productName, startDateStr, endDateStr, limit, offset);
-        
-        // 转换为DTO
-        List<InboundRecordDTO> dtos = records.stream()
-                .map(this::convertToDTO)
+    public CursorResponse<InboundRecordDTO> getInboundRecordsAfter(Long productId, String productName, LocalDate startDate,
+                                                                   LocalDate endDate, RecordCursor after, int size,
+                                                                   FieldSelection fields) {
+        InboundRecordFilter filter = toFilter(productId, productName, startDate, endDate);
+        List<? extends InboundRecordRepository.ListRow> rows;
+        if (filter == null) {
+            rows = Collections.emptyList();
+        } else if (fields.includesAny(PRODUCT_FIELDS)) {
+            rows = inboundRecordRepository.findWithProductAfterCursor(filter, after.getDate(), after.getId(), size + 1);
+        } else {
+            rows = inboundRecordRepository.findAfterCursor(filter, after.getDate(), after.getId(), size + 1);
+        }
+        boolean hasNext = rows.size() > size;
+        List<? extends InboundRecordRepository.ListRow> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = null;
+        if (hasNext) {
+            InboundRecordRepository.ListRow last = content.get(content.size() - 1);
+            nextCursor = new RecordCursor(last.getInDate(), last.getId()).encode();
+        }
+        List<InboundRecordDTO> dtos = content.stream()
+                .map(this::convertListRow)
                 .collect(Collectors.toList());
-        
-        return new PageImpl<>(dtos, pageable, total);
+        return new CursorResponse<>(dtos, size, hasNext, nextCursor);
     }
 
     /**
@@ -150,13 +137,12 @@ public class InboundRecordService {
     public InboundRecordDTO getInboundRecordById(Long id) {
         InboundRecord record = inboundRecordRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("入库记录不存在，ID: " + id));
-        return convertToDTO(record);
+        return convertToDTO(record, productRepository.findById(record.getProductId()).orElse(null));
     }
 
     /**
      * 创建入库记录
      */
-    @CacheEvict(value = "stats", allEntries = true)
     @Transactional
     public InboundRecordDTO createInboundRecord(InboundRecordDTO dto) {
         // 验证商品是否存在
@@ -168,7 +154,7 @@ public class InboundRecordService {
         record.setProductId(dto.getProductId());
         record.setQuantity(dto.getQuantity());
         record.setInDate(dto.getInDate());
-        record.setImageUrl(product.getImageUrl());
+        record.setImageHash(product.getImageHash());
 
         // 保存入库记录
         InboundRecord savedRecord = inboundRecordRepository.save(record);
@@ -176,14 +162,14 @@ public class InboundRecordService {
         // 更新商品库存（增加库存）
         product.setRemainingQuantity(product.getRemainingQuantity() + dto.getQuantity());
         productRepository.save(product);
+        productStockService.applyInbound(product, savedRecord.getInDate(), dto.getQuantity());
 
-        return convertToDTO(savedRecord);
+        return convertToDTO(savedRecord, product);
     }
 
     /**
      * 更新入库记录
      */
-    @CacheEvict(value = "stats", allEntries = true)
     @Transactional
     public InboundRecordDTO updateInboundRecord(InboundRecordDTO dto) {
         // 获取原入库记录
@@ -196,12 +182,16 @@ public class InboundRecordService {
 
         // 计算库存变化量
         int quantityDiff = dto.getQuantity() - existingRecord.getQuantity();
+        Long oldProductId = existingRecord.getProductId();
+        LocalDate oldInDate = existingRecord.getInDate();
+        int oldQuantity = existingRecord.getQuantity();
 
         // 更新入库记录
         existingRecord.setProductId(dto.getProductId());
         existingRecord.setQuantity(dto.getQuantity());
         existingRecord.setInDate(dto.getInDate());
-        existingRecord.setImageUrl(product.getImageUrl());
+        existingRecord.setImageHash(product.getImageHash());
+        existingRecord.setImageUrl(null);
 
         // 保存更新后的入库记录
         InboundRecord updatedRecord = inboundRecordRepository.save(existingRecord);
@@ -210,13 +200,19 @@ public class InboundRecordService {
         product.setRemainingQuantity(product.getRemainingQuantity() + quantityDiff);
         productRepository.save(product);
 
-        return convertToDTO(updatedRecord);
+        // 更新库存投影：撤销原商品、原日期的入库数量，按新商品、新日期计入
+        Product oldProduct = oldProductId.equals(product.getId()) ? product :
+                productRepository.findById(oldProductId)
+                        .orElseThrow(() -> new RuntimeException("商品不存在，ID: " + oldProductId));
+        productStockService.moveInbound(oldProduct, oldInDate, oldQuantity,
+                product, updatedRecord.getInDate(), dto.getQuantity());
+
+        return convertToDTO(updatedRecord, product);
     }
 
     /**
      * 删除入库记录
      */
-    @CacheEvict(value = "stats", allEntries = true)
     @Transactional
     public void deleteInboundRecord(Long id) {
         InboundRecord record = inboundRecordRepository.findById(id)
@@ -232,6 +228,7 @@ public class InboundRecordService {
 
         // 删除入库记录
         inboundRecordRepository.delete(record);
+        productStockService.applyInbound(product, record.getInDate(), -record.getQuantity());
     }
 
     /**
@@ -252,34 +249,60 @@ public class InboundRecordService {
     }
 
     /**
-     * 转换为DTO
+     * 组装列表查询条件：商品名称先由搜索索引解析为商品ID（同时指定商品ID时取交集），索引不可用时按商品名称关联查询；
+     * 没有匹配的商品时返回null
+     */
+    private InboundRecordFilter toFilter(Long productId, String productName, LocalDate startDate, LocalDate endDate) {
+        String name = productName != null && !productName.trim().isEmpty() ? productName.trim() : null;
+        if (name == null) {
+            return new InboundRecordFilter(productId, null, null, startDate, endDate);
+        }
+        List<Long> productIds = productSearchIndexService.searchByName(name);
+        if (productIds == null) {
+            return new InboundRecordFilter(productId, name, null, startDate, endDate);
+        }
+        if (productId != null) {
+            productIds = productIds.contains(productId) ? List.of(productId) : Collections.emptyList();
+        }
+        return productIds.isEmpty() ? null : new InboundRecordFilter(null, null, productIds, startDate, endDate);
+    }
+
+    /**
+     * 列表行转换为DTO：关联查询返回的商品字段和当前库存一并填充，未关联商品表时商品字段为null
+     */
+    private InboundRecordDTO convertListRow(InboundRecordRepository.ListRow record) {
+        if (!(record instanceof InboundRecordRepository.ProductListRow)) {
+            return convertToDTO(record, null);
+        }
+        InboundRecordRepository.ProductListRow row = (InboundRecordRepository.ProductListRow) record;
+        InboundRecordDTO dto = convertToDTO(row, row.getProduct());
+        dto.setProductCurrentStock(row.getProductCurrentStock());
+        return dto;
+    }
+
+    /**
+     * 转换为DTO，商品信息由调用方传入（不访问懒加载的关联商品）
      */
-    private InboundRecordDTO convertToDTO(InboundRecord record) {
+    private InboundRecordDTO convertToDTO(InboundRecordView record, ProductView product) {
         try {
             InboundRecordDTO dto = new InboundRecordDTO();
             dto.setId(record.getId());
             dto.setProductId(record.getProductId());
             dto.setQuantity(record.getQuantity());
             dto.setInDate(record.getInDate());
-            dto.setImageUrl(record.getImageUrl());
+            dto.setImageUrl(imageStorageService.recordImageUrl(record.getImageHash(), record.getImageUrl(), product));
+            dto.setThumbnailUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.THUMB));
+            dto.setMediumUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.MEDIUM));
             dto.setCreatedAt(record.getCreatedAt());
 
-            // 获取商品信息
-            if (record.getProduct() != null) {
-                dto.setProductName(record.getProduct().getName());
-                dto.setProductSpec(record.getProduct().getSpec());
-                dto.setProductUnit(record.getProduct().getUnit());
-                dto.setProductPrice(record.getProduct().getPrice());
-                dto.setTotalAmount(record.getProduct().getPrice().multiply(BigDecimal.valueOf(record.getQuantity())));
-            } else {
-                // 如果关联的商品信息未加载，手动查询
-                productRepository.findById(record.getProductId()).ifPresent(product -> {
-                    dto.setProductName(product.getName());
-                    dto.setProductSpec(product.getSpec());
-                    dto.setProductUnit(product.getUnit());
-                    dto.setProductPrice(product.getPrice());
-                    dto.setTotalAmount(product.getPrice().multiply(BigDecimal.valueOf(record.getQuantity())));
-                });
+            // 填充商品信息
+            if (product != null) {
+                dto.setProductName(product.getName());
+                dto.setProductSpec(product.getSpec());
+                dto.setProductUnit(product.getUnit());
+                dto.setProductPrice(product.getPrice());
+                dto.setProductInitialStock(product.getInitialStock());
+                dto.setTotalAmount(product.getPrice().multiply(BigDecimal.valueOf(record.getQuantity())));
             }
 
             return dto;
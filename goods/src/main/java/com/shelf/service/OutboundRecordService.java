@@ -1,20 +1,32 @@
 package com.shelf.service;
 
+import com.shelf.config.CacheConfig;
+import com.shelf.dto.CursorResponse;
 import com.shelf.dto.OutboundRecordDTO;
 import com.shelf.entity.OutboundRecord;
+import com.shelf.entity.OutboundRecordView;
 import com.shelf.entity.Product;
+import com.shelf.entity.ProductView;
+import com.shelf.repository.OutboundRecordFilter;
 import com.shelf.repository.OutboundRecordRepository;
 import com.shelf.repository.ProductRepository;
+import com.shelf.util.FieldSelection;
+import com.shelf.util.RecordCursor;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -24,62 +36,110 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class OutboundRecordService {
 
+    /** 批量查询商品时单条 IN 语句的最大ID数 */
+    private static final int PRODUCT_BATCH_SIZE = 1000;
+
+    /** 需要查询关联商品的字段（记录没有图片时使用商品图片） */
+    private static final String[] PRODUCT_FIELDS = {"productName", "productSpec", "productUnit", "productPrice",
+            "totalAmount", "imageUrl", "thumbnailUrl", "mediumUrl"};
+
     private final OutboundRecordRepository outboundRecordRepository;
     private final ProductRepository productRepository;
+    private final ProductStockService productStockService;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+    private final SingleFlightCache singleFlightCache;
+    private final TableStatsService tableStatsService;
+    private final ProductSearchIndexService productSearchIndexService;
 
     /**
-     * 分页查询出库记录 - PostgreSQL兼容版本
+     * 出库记录列表是否支持按该字段排序
+     */
+    public boolean isSortable(String field) {
+        return OutboundRecordRepository.SORT_COLUMNS.containsKey(field);
+    }
+
+    /**
+     * 分页查询出库记录
      */
     @Transactional(readOnly = true)
-    public Page<OutboundRecordDTO> getOutboundRecords(Long productId, String name, Integer paymentStatus,
-                                                     LocalDate startDate, LocalDate endDate, Pageable pageable) {
+    public Slice<OutboundRecordDTO> getOutboundRecords(Long productId, String name, Integer paymentStatus,
+                                                     LocalDate startDate, LocalDate endDate, Pageable pageable, FieldSelection fields) {
+        return getOutboundRecords(productId, null, name, paymentStatus, startDate, endDate, pageable, fields);
+    }
+
+    /**
+     * 分页查询出库记录（支持商品名称搜索）
+     */
+    @Transactional(readOnly = true)
+    public Slice<OutboundRecordDTO> getOutboundRecords(Long productId, String productName, String name, Integer paymentStatus,
+                                                     LocalDate startDate, LocalDate endDate, Pageable pageable, FieldSelection fields) {
         try {
-            // 转换日期为String，PostgreSQL需要明确的类型
-            String startDateStr = startDate != null ? startDate.toString() : null;
-            String endDateStr = endDate != null ? endDate.toString() : null;
-            
-            // 使用PostgreSQL兼容的查询
-            Page<OutboundRecord> records = outboundRecordRepository.findByMultipleConditions(
-                    productId, 
-                    name != null && !name.trim().isEmpty() ? name.trim() : null,
-                    paymentStatus,
-                    startDateStr, 
-                    endDateStr, 
-                    pageable);
-            
-            return records.map(this::convertToDTO);
+            OutboundRecordFilter filter = toFilter(productId, productName, name, paymentStatus, startDate, endDate);
+            if (filter == null) {
+                return new SliceImpl<>(Collections.emptyList(), pageable, false);
+            }
+            // 需要商品字段时关联商品表一次查出，不再按商品ID另行查询
+            Slice<? extends OutboundRecordRepository.ListRow> records = fields.includesAny(PRODUCT_FIELDS)
+                    ? outboundRecordRepository.findWithProductByFilter(filter, pageable)
+                    : outboundRecordRepository.findByFilter(filter, pageable);
+            return records.map(record -> convertToDTO(record, productOf(record)));
         } catch (Exception e) {
-            System.err.println("PostgreSQL出库记录查询失败: " + e.getMessage());
             throw new RuntimeException("查询出库记录失败: " + e.getMessage(), e);
         }
     }
 
     /**
-     * 分页查询出库记录（支持商品名称搜索）- PostgreSQL兼容版本
+     * 统计满足条件的出库记录数：精确总数按规范化后的查询条件短期缓存，写入出库记录时清除；
+     * estimate 为 true 且没有筛选条件时使用数据库统计信息估算（不扫描表），无法估算时仍返回精确总数
+     */
+    public long countOutboundRecords(Long productId, String productName, String name, Integer paymentStatus,
+                                     LocalDate startDate, LocalDate endDate, boolean estimate) {
+        String productFilter = productName != null && !productName.trim().isEmpty() ? productName.trim().toLowerCase() : null;
+        String nameFilter = name != null && !name.trim().isEmpty() ? name.trim().toLowerCase() : null;
+        if (estimate && productId == null && productFilter == null && nameFilter == null && paymentStatus == null
+                && startDate == null && endDate == null) {
+            Long estimated = tableStatsService.estimateRowCount("outbound_record");
+            if (estimated != null) {
+                return estimated;
+            }
+        }
+        String key = "outbound|" + productId + "|" + productFilter + "|" + nameFilter + "|" + paymentStatus
+                + "|" + startDate + "|" + endDate;
+        return singleFlightCache.get(CacheConfig.RECORD_COUNTS, key, () -> {
+            OutboundRecordFilter filter = toFilter(productId, productFilter, nameFilter, paymentStatus, startDate, endDate);
+            return filter != null ? outboundRecordRepository.countByFilter(filter) : 0L;
+        });
+    }
+
+    /**
+     * 游标分页查询出库记录（按出库日期、ID倒序），多取一条判断是否还有下一页
      */
     @Transactional(readOnly = true)
-    public Page<OutboundRecordDTO> getOutboundRecords(Long productId, String productName, String name, Integer paymentStatus,
-                                                     LocalDate startDate, LocalDate endDate, Pageable pageable) {
-        try {
-            // 转换日期为String，PostgreSQL需要明确的类型
-            String startDateStr = startDate != null ? startDate.toString() : null;
-            String endDateStr = endDate != null ? endDate.toString() : null;
-            
-            // 使用PostgreSQL兼容的商品名称搜索查询
-            Page<OutboundRecord> records = outboundRecordRepository.findByMultipleConditionsWithProductName(
-                    productId,
-                    productName != null && !productName.trim().isEmpty() ? productName.trim() : null,
-                    name != null && !name.trim().isEmpty() ? name.trim() : null,
-                    paymentStatus,
-                    startDateStr, 
-                    endDateStr, 
-                    pageable);
-            
-            return records.map(this::convertToDTO);
-        } catch (Exception e) {
-            System.err.println("PostgreSQL出库记录商品名称查询失败: " + e.getMessage());
-            throw new RuntimeException("查询出库记录失败: " + e.getMessage(), e);
+    public CursorResponse<OutboundRecordDTO> getOutboundRecordsAfter(Long productId, String productName, String name,
+                                                                     Integer paymentStatus, LocalDate startDate,
+                                                                     LocalDate endDate, RecordCursor after, int size,
+                                                                     FieldSelection fields) {
+        OutboundRecordFilter filter = toFilter(productId, productName, name, paymentStatus, startDate, endDate);
+        List<? extends OutboundRecordRepository.ListRow> rows;
+        if (filter == null) {
+            rows = Collections.emptyList();
+        } else if (fields.includesAny(PRODUCT_FIELDS)) {
+            rows = outboundRecordRepository.findWithProductAfterCursor(filter, after.getDate(), after.getId(), size + 1);
+        } else {
+            rows = outboundRecordRepository.findAfterCursor(filter, after.getDate(), after.getId(), size + 1);
+        }
+        boolean hasNext = rows.size() > size;
+        List<? extends OutboundRecordRepository.ListRow> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = null;
+        if (hasNext) {
+            OutboundRecordRepository.ListRow last = content.get(content.size() - 1);
+            nextCursor = new RecordCursor(last.getOutDate(), last.getId()).encode();
         }
+        List<OutboundRecordDTO> dtos = content.stream()
+                .map(record -> convertToDTO(record, productOf(record)))
+                .collect(Collectors.toList());
+        return new CursorResponse<>(dtos, size, hasNext, nextCursor);
     }
 
     /**
@@ -108,15 +168,16 @@ public class OutboundRecordService {
         record.setQuantity(dto.getQuantity());
         record.setName(dto.getName().trim());
         record.setPaymentStatus(dto.getPaymentStatus() != null ? dto.getPaymentStatus() : 0);
-        record.setImageUrl(product.getImageUrl()); // 设置商品图片
+        record.setImageHash(product.getImageHash()); // 记录商品图片哈希，不复制图片数据
         
         record = outboundRecordRepository.save(record);
         
         // 更新商品剩余数量
         product.setRemainingQuantity(product.getRemainingQuantity() - dto.getQuantity());
         productRepository.save(product);
+        productStockService.applyOutbound(product, record.getOutDate(), dto.getQuantity());
         
-        return convertToDTO(record);
+        return convertToDTO(record, product);
     }
 
     /**
@@ -126,7 +187,7 @@ public class OutboundRecordService {
     public OutboundRecordDTO getOutboundRecordById(Long id) {
         OutboundRecord record = outboundRecordRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("出库记录不存在，ID: " + id));
-        return convertToDTO(record);
+        return convertToDTO(record, productRepository.findById(record.getProductId()).orElse(null));
     }
 
     /**
@@ -141,6 +202,9 @@ public class OutboundRecordService {
         // 获取对应的商品
         Product product = productRepository.findById(oldRecord.getProductId())
                 .orElseThrow(() -> new RuntimeException("商品不存在，ID: " + oldRecord.getProductId()));
+        Product oldProduct = product;
+        LocalDate oldOutDate = oldRecord.getOutDate();
+        int oldQuantity = oldRecord.getQuantity();
         
         // 先恢复原来的库存数量
         product.setRemainingQuantity(product.getRemainingQuantity() + oldRecord.getQuantity());
@@ -175,10 +239,16 @@ public class OutboundRecordService {
         oldRecord.setOutDate(outboundRecordDTO.getOutDate());
         oldRecord.setName(outboundRecordDTO.getName().trim());
         oldRecord.setPaymentStatus(outboundRecordDTO.getPaymentStatus() != null ? outboundRecordDTO.getPaymentStatus() : 0);
-        oldRecord.setImageUrl(product.getImageUrl()); // 更新商品图片
+        oldRecord.setImageHash(product.getImageHash()); // 更新商品图片哈希
+        oldRecord.setImageUrl(null);
         
         OutboundRecord savedRecord = outboundRecordRepository.save(oldRecord);
-        return convertToDTO(savedRecord);
+        
+        // 更新库存投影：撤销原商品、原日期的出库数量，按新商品、新日期计入
+        productStockService.moveOutbound(oldProduct, oldOutDate, oldQuantity,
+                product, savedRecord.getOutDate(), savedRecord.getQuantity());
+        
+        return convertToDTO(savedRecord, product);
     }
 
     /**
@@ -200,6 +270,7 @@ public class OutboundRecordService {
         
         // 删除出库记录
         outboundRecordRepository.deleteById(id);
+        productStockService.applyOutbound(product, record.getOutDate(), -record.getQuantity());
     }
 
     /**
@@ -214,9 +285,9 @@ public class OutboundRecordService {
     /**
      * 统计指定日期范围内的出库总量
      */
-    @Transactional(readOnly = true)
     public Integer getTotalOutboundQuantity(LocalDate startDate, LocalDate endDate) {
-        return outboundRecordRepository.sumQuantityByDateRange(startDate, endDate);
+        return singleFlightCache.execute("outboundQuantity:" + startDate + ":" + endDate,
+                () -> outboundRecordRepository.sumQuantityByDateRange(startDate, endDate));
     }
 
     /**
@@ -224,16 +295,73 @@ public class OutboundRecordService {
      */
     @Transactional(readOnly = true)
     public List<OutboundRecordDTO> getOutboundRecordsForExport(LocalDate startDate, LocalDate endDate) {
-        List<OutboundRecord> records = outboundRecordRepository.findByOutDateBetween(startDate, endDate);
+        List<OutboundRecordRepository.ListRow> records = outboundRecordRepository.findByOutDateBetween(startDate, endDate);
+        return convertToDTOs(records, FieldSelection.all());
+    }
+
+    /**
+     * 组装列表查询条件：商品名称先由搜索索引解析为商品ID（同时指定商品ID时取交集），索引不可用时按商品名称关联查询；
+     * 没有匹配的商品时返回null
+     */
+    private OutboundRecordFilter toFilter(Long productId, String productName, String name, Integer paymentStatus,
+                                          LocalDate startDate, LocalDate endDate) {
+        String productFilter = productName != null && !productName.trim().isEmpty() ? productName.trim() : null;
+        String nameFilter = name != null && !name.trim().isEmpty() ? name.trim() : null;
+        if (productFilter == null) {
+            return new OutboundRecordFilter(productId, null, null, nameFilter, paymentStatus, startDate, endDate);
+        }
+        List<Long> productIds = productSearchIndexService.searchByName(productFilter);
+        if (productIds == null) {
+            return new OutboundRecordFilter(productId, productFilter, null, nameFilter, paymentStatus, startDate, endDate);
+        }
+        if (productId != null) {
+            productIds = productIds.contains(productId) ? List.of(productId) : Collections.emptyList();
+        }
+        return productIds.isEmpty() ? null
+                : new OutboundRecordFilter(null, null, productIds, nameFilter, paymentStatus, startDate, endDate);
+    }
+
+    /**
+     * 关联查询返回的商品字段，未关联商品表或商品已删除时为null
+     */
+    private static ProductView productOf(OutboundRecordRepository.ListRow record) {
+        return record instanceof OutboundRecordRepository.ProductListRow ? ((OutboundRecordRepository.ProductListRow) record).getProduct() : null;
+    }
+
+    /**
+     * 批量转换DTO：先按去重后的商品ID批量查询商品，再逐条组装，查询次数与记录条数无关
+     */
+    private List<OutboundRecordDTO> convertToDTOs(List<? extends OutboundRecordView> records, FieldSelection fields) {
+        Map<Long, ProductView> products = fields.includesAny(PRODUCT_FIELDS)
+                ? findProducts(records) : Collections.emptyMap();
         return records.stream()
-                .map(this::convertToDTO)
+                .map(record -> convertToDTO(record, products.get(record.getProductId())))
                 .collect(Collectors.toList());
     }
 
     /**
-     * 转换Entity到DTO
+     * 按记录中的商品ID批量查询商品，每批一条 IN 查询
+     */
+    private Map<Long, ProductView> findProducts(Collection<? extends OutboundRecordView> records) {
+        List<Long> productIds = records.stream()
+                .map(OutboundRecordView::getProductId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Long, ProductView> products = new HashMap<>(productIds.size() * 2);
+        for (int from = 0; from < productIds.size(); from += PRODUCT_BATCH_SIZE) {
+            List<Long> batch = productIds.subList(from, Math.min(from + PRODUCT_BATCH_SIZE, productIds.size()));
+            for (ProductView product : productRepository.findViewsByIds(batch)) {
+                products.put(product.getId(), product);
+            }
+        }
+        return products;
+    }
+
+    /**
+     * 转换Entity到DTO，商品不存在时只填充记录本身的字段
      */
-    private OutboundRecordDTO convertToDTO(OutboundRecord record) {
+    private OutboundRecordDTO convertToDTO(OutboundRecordView record, ProductView product) {
         OutboundRecordDTO dto = new OutboundRecordDTO();
         dto.setId(record.getId());
         dto.setProductId(record.getProductId());
@@ -243,8 +371,7 @@ public class OutboundRecordService {
         dto.setPaymentStatus(record.getPaymentStatus());
         dto.setCreatedAt(record.getCreatedAt());
         
-        // 获取商品信息
-        Product product = productRepository.findById(record.getProductId()).orElse(null);
+        // 填充商品信息
         if (product != null) {
             dto.setProductName(product.getName());
             dto.setProductSpec(product.getSpec());
@@ -253,9 +380,9 @@ public class OutboundRecordService {
             dto.setTotalAmount(product.getPrice().multiply(BigDecimal.valueOf(record.getQuantity())));
         }
         
-        // 使用记录中的图片URL，如果没有则使用商品的图片URL
-        dto.setImageUrl(record.getImageUrl() != null ? record.getImageUrl() : 
-                       (product != null ? product.getImageUrl() : null));
+        dto.setImageUrl(imageStorageService.recordImageUrl(record.getImageHash(), record.getImageUrl(), product));
+        dto.setThumbnailUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.THUMB));
+        dto.setMediumUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.MEDIUM));
         
         return dto;
     }
@@ -0,0 +1,44 @@
+package com.shelf.service;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 单个商品在一个事务内的数据变化，同一事务内的多次变化合并为一条
+ */
+@Data
+@NoArgsConstructor
+public class ProductChange {
+
+    private Long productId;
+
+    /** 当前库存变化量 */
+    private int stockDelta;
+
+    /** 库存价值变化量 */
+    private BigDecimal valueDelta = BigDecimal.ZERO;
+
+    /** 库存投影是否更新过；为true时price、lowStockThreshold为最新值 */
+    private boolean stockChanged;
+    private BigDecimal price;
+    private Integer lowStockThreshold;
+
+    /** 本事务内出入库记录涉及的最早业务日期，该日期（含）之后的历史库存失效 */
+    private LocalDate earliestMovementDate;
+
+    /** 本事务内是否增删改过入库记录、出库记录 */
+    private boolean inboundChanged;
+    private boolean outboundChanged;
+
+    /** 商品新增、商品信息修改、商品删除 */
+    private boolean created;
+    private boolean updated;
+    private boolean removed;
+
+    public ProductChange(Long productId) {
+        this.productId = productId;
+    }
+}
@@ -0,0 +1,422 @@
+package com.shelf.service;
+
+import com.shelf.dto.ProductSuggestionDTO;
+import com.shelf.repository.ProductRepository;
+import com.shelf.util.PinyinInitials;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品名称、规格的内存搜索索引
+ * 启动时加载全部商品的名称和规格，按单字和相邻两字（适合中文商品名）建立倒排表；
+ * 商品新增、修改、删除提交后由 {@link DataChangeBus} 通知，按商品ID增量更新；全量加载期间有提交发生时重新读取，
+ * 多次仍不成功时保持未加载（调用方回退到数据库查询），由 {@link #retryLoad} 定时重新加载。
+ * 模糊搜索先求关键词各 n-gram 倒排表的交集，再逐个校验包含关系（按字面包含匹配，与关键词经
+ * {@link com.shelf.config.SqlDialect#escapeLike} 转义后的 SQL 回退查询一致）；
+ * 调用方拿到商品ID后按 product_id IN (...) 查询，不再对商品表做全表模糊匹配。
+ * 另按名称、名称拼音首字母、规格维护有序词表，输入提示按前缀范围扫描，只读取前 limit 条。
+ * 查询持有读锁可并发执行，增量更新和全量加载持有写锁。
+ */
+@Slf4j
+@Service
+@Order(1)
+public class ProductSearchIndexService implements DataChangeListener {
+
+    /** 读取期间有提交发生时的最多读取次数 */
+    private static final int LOAD_ATTEMPTS = 10;
+
+    private final ProductRepository productRepository;
+    private final DataChangeBus dataChangeBus;
+    private final TransactionTemplate readTransaction;
+
+    /** 匹配的商品超过该数量时返回null，由调用方按原 SQL 模糊查询（条件不具选择性，IN 列表反而更慢） */
+    @Value("${search.index.max-candidates:1000}")
+    private int maxCandidates;
+
+    private final Map<Long, Entry> entries = new HashMap<>(1024);
+    private final Map<String, Set<Long>> nameGrams = new HashMap<>(4096);
+    private final Map<String, Set<Long>> specGrams = new HashMap<>(4096);
+    /** 输入提示词表，按 (词, 商品ID) 排序，前缀相同的词连续排列 */
+    private final NavigableSet<Term> nameTerms = new TreeSet<>(Term.ORDER);
+    private final NavigableSet<Term> initialTerms = new TreeSet<>(Term.ORDER);
+    private final NavigableSet<Term> specTerms = new TreeSet<>(Term.ORDER);
+    /** 串行执行增量更新的“读取商品 + 更新索引”，后执行的更新读到的一定是更新的数据 */
+    private final Object refreshLock = new Object();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public ProductSearchIndexService(ProductRepository productRepository,
+                                     DataChangeBus dataChangeBus,
+                                     PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.dataChangeBus = dataChangeBus;
+        // 提交回调中访问数据库须使用新事务（原事务已提交）
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 全量加载索引（启动时和重置后调用）
+     * 读取期间没有提交发生时才应用读取结果并标记已加载；未加载期间的商品变化通知会被忽略，
+     * 读取期间有提交（其通知可能已被忽略）时整体作废重读，多次仍未成功时保持未加载，由 {@link #retryLoad} 定时重新加载
+     */
+    public void reload() {
+        long startTime = System.currentTimeMillis();
+        for (int attempt = 1; attempt <= LOAD_ATTEMPTS; attempt++) {
+            long stamp = dataChangeBus.stamp();
+            if (stamp >= 0) {
+                List<Object[]> rows = readTransaction.execute(status -> productRepository.findSearchTexts());
+                lock.writeLock().lock();
+                try {
+                    if (dataChangeBus.unchangedSince(stamp)) {
+                        entries.clear();
+                        nameGrams.clear();
+                        specGrams.clear();
+                        nameTerms.clear();
+                        initialTerms.clear();
+                        specTerms.clear();
+                        for (Object[] row : rows) {
+                            put((Long) row[0], (String) row[1], (String) row[2], (String) row[3]);
+                        }
+                        loaded = true;
+                        log.info("商品搜索索引加载完成，商品数: {}，耗时: {}ms",
+                                rows.size(), System.currentTimeMillis() - startTime);
+                        return;
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            try {
+                Thread.sleep(20L * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        loaded = false;
+        log.warn("商品搜索索引加载期间持续有数据提交，暂时回退到数据库查询");
+    }
+
+    /**
+     * 索引未加载（加载期间持续有提交）时定时重新加载，已加载时不做任何操作
+     */
+    @Scheduled(initialDelayString = "${search.index.retry-interval-ms:30000}",
+               fixedDelayString = "${search.index.retry-interval-ms:30000}")
+    public void retryLoad() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    /**
+     * 索引是否已加载，未加载时调用方应回退到数据库模糊查询
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 按名称、规格模糊查询商品ID（均不区分大小写，为空表示不限），按ID升序
+     * 索引未加载或匹配数超过上限时返回null
+     */
+    public List<Long> search(String name, String spec) {
+        if (!loaded) {
+            return null;
+        }
+        String nameKeyword = normalize(name);
+        String specKeyword = normalize(spec);
+        lock.readLock().lock();
+        try {
+            Set<Long> nameCandidates = nameKeyword != null ? candidates(nameGrams, nameKeyword) : null;
+            Set<Long> specCandidates = specKeyword != null ? candidates(specGrams, specKeyword) : null;
+            Collection<Long> scan;
+            if (nameCandidates == null && specCandidates == null) {
+                scan = entries.keySet();
+            } else if (nameCandidates == null || specCandidates != null && specCandidates.size() < nameCandidates.size()) {
+                scan = specCandidates;
+            } else {
+                scan = nameCandidates;
+            }
+
+            List<Long> productIds = new ArrayList<>();
+            for (Long productId : scan) {
+                Entry entry = entries.get(productId);
+                if (entry != null && entry.matches(nameKeyword, specKeyword)) {
+                    if (productIds.size() >= maxCandidates) {
+                        return null;
+                    }
+                    productIds.add(productId);
+                }
+            }
+            Collections.sort(productIds);
+            return productIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按名称模糊查询商品ID，见 {@link #search}
+     */
+    public List<Long> searchByName(String name) {
+        return search(name, null);
+    }
+
+    /**
+     * 输入提示：名称前缀、拼音首字母前缀、规格前缀匹配的商品（按此优先级，同级按词排序），最多 limit 个
+     * 索引未加载时返回null
+     */
+    public List<ProductSuggestionDTO> suggest(String keyword, int limit) {
+        if (!loaded) {
+            return null;
+        }
+        String prefix = normalize(keyword != null ? keyword.trim() : null);
+        if (prefix == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            Map<Long, ProductSuggestionDTO> matched = new LinkedHashMap<>(limit * 2);
+            collectPrefix(nameTerms, prefix, limit, matched);
+            collectPrefix(initialTerms, prefix, limit, matched);
+            collectPrefix(specTerms, prefix, limit, matched);
+            return new ArrayList<>(matched.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 事务提交后按商品变化更新索引：删除的商品直接移除，新增和修改的商品重新读取名称和规格
+     */
+    @Override
+    public void onChanges(Collection<ProductChange> changes) {
+        if (!loaded) {
+            return;
+        }
+        List<Long> changedIds = new ArrayList<>();
+        for (ProductChange change : changes) {
+            if (change.isRemoved()) {
+                lock.writeLock().lock();
+                try {
+                    remove(change.getProductId());
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } else if (change.isCreated() || change.isUpdated()) {
+                changedIds.add(change.getProductId());
+            }
+        }
+        if (!changedIds.isEmpty()) {
+            refresh(changedIds);
+        }
+    }
+
+    /**
+     * 重置（包括其他节点重置或可能漏收通知）后全量重新加载
+     */
+    @Override
+    public void onReset() {
+        reload();
+    }
+
+    private void refresh(List<Long> productIds) {
+        synchronized (refreshLock) {
+            List<Object[]> rows = readTransaction.execute(status -> productRepository.findSearchTextsByIds(productIds));
+            lock.writeLock().lock();
+            try {
+                // 查不到的商品已被删除
+                for (Long productId : productIds) {
+                    remove(productId);
+                }
+                for (Object[] row : rows) {
+                    put((Long) row[0], (String) row[1], (String) row[2], (String) row[3]);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 关键词各 n-gram 倒排表的交集（可能包含 n-gram 不相邻的商品，需再校验）
+     */
+    private static Set<Long> candidates(Map<String, Set<Long>> index, String keyword) {
+        List<Set<Long>> postings = new ArrayList<>();
+        for (String gram : queryGrams(keyword)) {
+            Set<Long> posting = index.get(gram);
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            postings.add(posting);
+        }
+        postings.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        Set<Long> result = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.retainAll(postings.get(i));
+        }
+        return result;
+    }
+
+    private void collectPrefix(NavigableSet<Term> terms, String prefix, int limit,
+                               Map<Long, ProductSuggestionDTO> matched) {
+        if (matched.size() >= limit) {
+            return;
+        }
+        for (Term term : terms.subSet(new Term(prefix, Long.MIN_VALUE), true,
+                new Term(prefix + Character.MAX_VALUE, Long.MIN_VALUE), false)) {
+            Entry entry = entries.get(term.productId());
+            if (entry != null && !matched.containsKey(term.productId())) {
+                matched.put(term.productId(),
+                        new ProductSuggestionDTO(term.productId(), entry.name(), entry.spec(), entry.unit()));
+                if (matched.size() >= limit) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void put(Long productId, String name, String spec, String unit) {
+        Entry entry = new Entry(name, spec, unit, normalize(name), normalize(spec));
+        entries.put(productId, entry);
+        addGrams(nameGrams, entry.nameText(), productId);
+        addGrams(specGrams, entry.specText(), productId);
+        for (String term : nameTermsOf(entry)) {
+            nameTerms.add(new Term(term, productId));
+        }
+        String initials = PinyinInitials.of(entry.name());
+        if (!initials.isEmpty()) {
+            initialTerms.add(new Term(initials, productId));
+        }
+        if (entry.specText() != null) {
+            specTerms.add(new Term(entry.specText(), productId));
+        }
+    }
+
+    private void remove(Long productId) {
+        Entry entry = entries.remove(productId);
+        if (entry != null) {
+            removeGrams(nameGrams, entry.nameText(), productId);
+            removeGrams(specGrams, entry.specText(), productId);
+            for (String term : nameTermsOf(entry)) {
+                nameTerms.remove(new Term(term, productId));
+            }
+            initialTerms.remove(new Term(PinyinInitials.of(entry.name()), productId));
+            if (entry.specText() != null) {
+                specTerms.remove(new Term(entry.specText(), productId));
+            }
+        }
+    }
+
+    /**
+     * 名称的提示词：完整名称，名称含空格时另加各个词
+     */
+    private static Set<String> nameTermsOf(Entry entry) {
+        if (entry.nameText() == null) {
+            return Collections.emptySet();
+        }
+        Set<String> terms = new HashSet<>();
+        terms.add(entry.nameText());
+        for (String word : entry.nameText().trim().split("\\s+")) {
+            if (!word.isEmpty()) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static void addGrams(Map<String, Set<Long>> index, String text, Long productId) {
+        for (String gram : indexGrams(text)) {
+            index.computeIfAbsent(gram, key -> new HashSet<>()).add(productId);
+        }
+    }
+
+    private static void removeGrams(Map<String, Set<Long>> index, String text, Long productId) {
+        for (String gram : indexGrams(text)) {
+            Set<Long> posting = index.get(gram);
+            if (posting != null && posting.remove(productId) && posting.isEmpty()) {
+                index.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * 文本的全部单字和相邻两字（按 Unicode 码点切分）
+     */
+    private static Set<String> indexGrams(String text) {
+        if (text == null) {
+            return Collections.emptySet();
+        }
+        int[] codePoints = text.codePoints().toArray();
+        Set<String> grams = new HashSet<>(codePoints.length * 2);
+        for (int i = 0; i < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 1));
+            if (i + 1 < codePoints.length) {
+                grams.add(new String(codePoints, i, 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 关键词的查询 n-gram：单个字符用单字，否则用相邻两字
+     */
+    private static List<String> queryGrams(String keyword) {
+        int[] codePoints = keyword.codePoints().toArray();
+        if (codePoints.length == 1) {
+            return List.of(keyword);
+        }
+        List<String> grams = new ArrayList<>(codePoints.length - 1);
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 2));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null || text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 索引中的商品：原始名称、规格、单位，以及转小写后用于匹配的名称和规格
+     */
+    private record Entry(String name, String spec, String unit, String nameText, String specText) {
+
+        boolean matches(String nameKeyword, String specKeyword) {
+            return (nameKeyword == null || nameText != null && nameText.contains(nameKeyword))
+                    && (specKeyword == null || specText != null && specText.contains(specKeyword));
+        }
+    }
+
+    /**
+     * 提示词表的词条
+     */
+    private record Term(String text, long productId) {
+        static final Comparator<Term> ORDER =
+                Comparator.comparing(Term::text).thenComparingLong(Term::productId);
+    }
+}
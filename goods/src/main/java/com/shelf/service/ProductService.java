@@ -1,25 +1,43 @@
 package com.shelf.service;
 
+import com.shelf.config.CacheConfig;
+import com.shelf.config.SqlDialect;
 import com.shelf.dto.ProductDTO;
+import com.shelf.dto.ProductSuggestionDTO;
 import com.shelf.dto.StockExportDTO;
+import com.shelf.dto.StockMatrixDTO;
 import com.shelf.entity.Product;
+import com.shelf.entity.ProductStock;
+import com.shelf.entity.ProductView;
 import com.shelf.repository.InboundRecordRepository;
 import com.shelf.repository.OutboundRecordRepository;
 import com.shelf.repository.ProductRepository;
+import com.shelf.repository.ProductStockRepository;
+import com.shelf.util.FieldSelection;
+import com.shelf.util.LongLongHashMap;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -30,50 +48,59 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ProductService {
 
+    /** 需要关联库存投影的商品字段 */
+    private static final Set<String> STOCK_FIELDS = Set.of("currentStock", "remainingQuantity", "totalOutbound", "totalValue");
+
     private final ProductRepository productRepository;
     private final InboundRecordRepository inboundRecordRepository;
     private final OutboundRecordRepository outboundRecordRepository;
+    private final ProductStockRepository productStockRepository;
+    private final ProductStockService productStockService;
+    private final StockSnapshotService stockSnapshotService;
+    private final StockIndexService stockIndexService;
+    private final StockTimelineService stockTimelineService;
+    private final DataChangeBus dataChangeBus;
+    private final SingleFlightCache singleFlightCache;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+    private final ProductSearchIndexService productSearchIndexService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stock.low-stock.default-threshold:10}")
+    private int defaultLowStockThreshold;
 
     /**
-     * 分页查询商品列表
+     * 分页查询商品列表，未选择库存字段且不按库存排序时不关联库存投影
+     * 按名称、规格搜索时先由内存搜索索引得到商品ID，再按ID查询，总数即匹配的商品数
      */
     @Transactional(readOnly = true)
-    public Page<ProductDTO> getProducts(String name, String spec, Pageable pageable) {
+    public Page<ProductDTO> getProducts(String name, String spec, Pageable pageable, FieldSelection fields) {
         try {
-            Page<Product> products = productRepository.findByNameAndSpecContaining(name, spec, pageable);
-            
-            // 批量获取入库和出库数据，避免N+1查询问题
-            List<Long> productIds = products.getContent().stream()
-                    .map(Product::getId)
-                    .collect(Collectors.toList());
-            
-            Map<Long, Integer> inboundMap = new HashMap<>();
-            Map<Long, Integer> outboundMap = new HashMap<>();
-            
-            if (!productIds.isEmpty()) {
-                // 使用批量查询替代循环查询
-                List<Object[]> inboundData = inboundRecordRepository.sumQuantityByProductIds(productIds);
-                for (Object[] data : inboundData) {
-                    Long productId = (Long) data[0];
-                    Integer quantity = ((Number) data[1]).intValue();
-                    inboundMap.put(productId, quantity);
-                }
-                
-                List<Object[]> outboundData = outboundRecordRepository.sumQuantityByProductIds(productIds);
-                for (Object[] data : outboundData) {
-                    Long productId = (Long) data[0];
-                    Integer quantity = ((Number) data[1]).intValue();
-                    outboundMap.put(productId, quantity);
-                }
-                
-                // 为没有记录的商品设置默认值0
-                for (Long productId : productIds) {
-                    inboundMap.putIfAbsent(productId, 0);
-                    outboundMap.putIfAbsent(productId, 0);
+            boolean sortByStock = pageable.getSort().stream()
+                    .anyMatch(order -> STOCK_FIELDS.contains(order.getProperty()));
+            boolean withStock = sortByStock || fields.includesAny(STOCK_FIELDS.toArray(new String[0]));
+            boolean searching = name != null && !name.isEmpty() || spec != null && !spec.isEmpty();
+            List<Long> productIds = searching ? productSearchIndexService.search(name, spec) : null;
+            if (productIds != null) {
+                if (productIds.isEmpty()) {
+                    return Page.empty(pageable);
                 }
+                List<ProductDTO> content = withStock
+                        ? productRepository.findListRowsByIds(productIds, pageable).map(this::convertToDTO).getContent()
+                        : productRepository.findViewsByIds(productIds, pageable)
+                                .map(product -> convertToDTO(product, null, null)).getContent();
+                return new PageImpl<>(content, pageable, productIds.size());
+            }
+            // 索引不可用时按 SQL 模糊查询，关键词中的 %、_ 按字面匹配
+            String nameKeyword = SqlDialect.escapeLike(name);
+            String specKeyword = SqlDialect.escapeLike(spec);
+            if (!withStock) {
+                return productRepository.findViewsByNameAndSpecContaining(nameKeyword, specKeyword, pageable)
+                        .map(product -> convertToDTO(product, null, null));
             }
-            
-            return products.map(product -> convertToDTOWithCache(product, inboundMap, outboundMap));
+            // 关联库存投影，一次查询同时获取商品和实时库存，不读取图片数据
+            return productRepository.findListRowsByNameAndSpecContaining(nameKeyword, specKeyword, pageable)
+                    .map(this::convertToDTO);
         } catch (Exception e) {
             log.error("分页查询商品列表失败", e);
             throw new RuntimeException("分页查询商品列表失败: " + e.getMessage());
@@ -81,47 +108,34 @@ public class ProductService {
     }
 
     /**
-     * 获取所有商品（用于导出）- 添加缓存优化
+     * 商品输入提示：优先读取内存搜索索引（名称、拼音首字母、规格前缀），索引未加载时按名称前缀查询数据库
      */
-    @Cacheable(value = "products", key = "'allProducts'")
     @Transactional(readOnly = true)
+    public List<ProductSuggestionDTO> suggestProducts(String keyword, int limit) {
+        List<ProductSuggestionDTO> suggestions = productSearchIndexService.suggest(keyword, limit);
+        if (suggestions != null) {
+            return suggestions;
+        }
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        String prefix = SqlDialect.escapeLike(keyword.trim());
+        return productRepository.findSuggestionsByNamePrefix(prefix, PageRequest.of(0, limit)).stream()
+                .map(row -> new ProductSuggestionDTO((Long) row[0], (String) row[1], (String) row[2], (String) row[3]))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 获取所有商品（用于导出）- 添加缓存优化
+     */
     public List<ProductDTO> getAllProducts() {
+        return singleFlightCache.get(CacheConfig.PRODUCTS, "allProducts", this::loadAllProducts);
+    }
+
+    private List<ProductDTO> loadAllProducts() {
         try {
-            List<Product> products = productRepository.findAllByOrderByCreatedAtDesc();
-            
-            // 批量获取入库和出库数据，避免N+1查询问题
-            Map<Long, Integer> inboundMap = new HashMap<>();
-            Map<Long, Integer> outboundMap = new HashMap<>();
-            
-            if (!products.isEmpty()) {
-                List<Long> productIds = products.stream()
-                        .map(Product::getId)
-                        .collect(Collectors.toList());
-                
-                // 使用批量查询替代循环查询
-                List<Object[]> inboundData = inboundRecordRepository.sumQuantityByProductIds(productIds);
-                for (Object[] data : inboundData) {
-                    Long productId = (Long) data[0];
-                    Integer quantity = ((Number) data[1]).intValue();
-                    inboundMap.put(productId, quantity);
-                }
-                
-                List<Object[]> outboundData = outboundRecordRepository.sumQuantityByProductIds(productIds);
-                for (Object[] data : outboundData) {
-                    Long productId = (Long) data[0];
-                    Integer quantity = ((Number) data[1]).intValue();
-                    outboundMap.put(productId, quantity);
-                }
-                
-                // 为没有记录的商品设置默认值0
-                for (Long productId : productIds) {
-                    inboundMap.putIfAbsent(productId, 0);
-                    outboundMap.putIfAbsent(productId, 0);
-                }
-            }
-            
-            return products.stream()
-                    .map(product -> convertToDTOWithCache(product, inboundMap, outboundMap))
+            return productRepository.findAllListRows().stream()
+                    .map(this::convertToDTO)
                     .collect(Collectors.toList());
         } catch (Exception e) {
             log.error("获取所有商品失败", e);
@@ -132,6 +146,7 @@ public class ProductService {
     /**
      * 根据ID获取商品
      */
+    @Cacheable(value = "product-by-id", key = "#id")
     @Transactional(readOnly = true)
     public ProductDTO getProductById(Long id) {
         try {
@@ -147,7 +162,6 @@ public class ProductService {
     /**
      * 保存商品（新增或更新）
      */
-    @CacheEvict(value = {"stats", "products"}, allEntries = true)
     @Transactional
     public ProductDTO saveProduct(ProductDTO productDTO) {
         Product product;
@@ -163,14 +177,42 @@ public class ProductService {
             updateProductFromDTO(product, productDTO);
         }
         
+        boolean created = product.getId() == null;
         product = productRepository.save(product);
+        productStockService.refreshProduct(product);
+        dataChangeBus.productSaved(product.getId(), created);
         return convertToDTO(product);
     }
 
+    /**
+     * 上传商品图片：图片流边读边校验大小和格式写入图片存储，商品只记录图片哈希
+     * 图片在事务外写入，写完后才开启事务更新商品，上传期间不占用数据库连接；更新失败时删除本次新建的图片文件
+     */
+    public ProductDTO updateProductImage(Long id, InputStream input) {
+        if (!productRepository.existsById(id)) {
+            throw new RuntimeException("商品不存在，ID: " + id);
+        }
+        ImageStorageService.StoredImage image = imageStorageService.store(input);
+        try {
+            return new TransactionTemplate(transactionManager).execute(status -> {
+                Product product = productRepository.findByIdForUpdate(id)
+                        .orElseThrow(() -> new RuntimeException("商品不存在，ID: " + id));
+                product.setImageHash(image.getHash());
+                product.setImageUrl(null);
+                product = productRepository.save(product);
+                dataChangeBus.productSaved(id, false);
+                imageVariantService.generateAfterCommit(image.getHash());
+                return convertToDTO(product);
+            });
+        } catch (RuntimeException e) {
+            imageStorageService.discard(image);
+            throw e;
+        }
+    }
+
     /**
      * 删除商品
      */
-    @CacheEvict(value = {"stats", "products"}, allEntries = true)
     @Transactional
     public void deleteProduct(Long id) {
         if (!productRepository.existsById(id)) {
@@ -183,50 +225,36 @@ public class ProductService {
             throw new RuntimeException("该商品存在出库记录，无法删除");
         }
         
+        productStockService.removeProduct(id);
         productRepository.deleteById(id);
     }
 
     /**
-     * 查询库存不足的商品
+     * 查询库存不足的商品，按当前库存升序
+     * 设置了预警值的商品按自身预警值判断，其余商品按threshold判断（为空时使用默认预警值）
      */
     @Transactional(readOnly = true)
     public List<ProductDTO> getLowStockProducts(Integer threshold) {
         try {
-            List<Product> products = productRepository.findLowStockProducts(threshold);
-            
-            // 批量获取入库和出库数据，避免N+1查询问题
-            Map<Long, Integer> inboundMap = new HashMap<>();
-            Map<Long, Integer> outboundMap = new HashMap<>();
-            
-            if (!products.isEmpty()) {
-                List<Long> productIds = products.stream()
-                        .map(Product::getId)
+            int effectiveThreshold = threshold != null ? threshold : defaultLowStockThreshold;
+            if (!stockIndexService.isLoaded()) {
+                return productRepository.findLowStockListRows(effectiveThreshold).stream()
+                        .map(this::convertToDTO)
                         .collect(Collectors.toList());
-                
-                // 使用批量查询替代循环查询
-                List<Object[]> inboundData = inboundRecordRepository.sumQuantityByProductIds(productIds);
-                for (Object[] data : inboundData) {
-                    Long productId = (Long) data[0];
-                    Integer quantity = ((Number) data[1]).intValue();
-                    inboundMap.put(productId, quantity);
-                }
-                
-                List<Object[]> outboundData = outboundRecordRepository.sumQuantityByProductIds(productIds);
-                for (Object[] data : outboundData) {
-                    Long productId = (Long) data[0];
-                    Integer quantity = ((Number) data[1]).intValue();
-                    outboundMap.put(productId, quantity);
-                }
-                
-                // 为没有记录的商品设置默认值0
-                for (Long productId : productIds) {
-                    inboundMap.putIfAbsent(productId, 0);
-                    outboundMap.putIfAbsent(productId, 0);
-                }
             }
-            
-            return products.stream()
-                    .map(product -> convertToDTOWithCache(product, inboundMap, outboundMap))
+
+            // 内存索引范围扫描得到商品ID，再按ID批量加载商品信息
+            List<Long> productIds = stockIndexService.findLowStock(effectiveThreshold);
+            if (productIds.isEmpty()) {
+                return new ArrayList<>();
+            }
+            Map<Long, ProductDTO> dtoMap = new HashMap<>();
+            for (ProductRepository.ListRow row : productRepository.findListRowsByIds(productIds)) {
+                dtoMap.put(row.getId(), convertToDTO(row));
+            }
+            return productIds.stream()
+                    .map(dtoMap::get)
+                    .filter(Objects::nonNull)
                     .collect(Collectors.toList());
         } catch (Exception e) {
             log.error("查询库存不足商品失败", e);
@@ -244,50 +272,39 @@ public class ProductService {
     }
 
     /**
-     * 获取指定日期的历史库存
+     * 获取指定日期的历史库存（最近快照 + 快照之后的增量记录）
      */
-    @Transactional(readOnly = true)
     public List<StockExportDTO> getHistoryStock(LocalDate date) {
-        // 获取所有商品
-        List<Product> products = productRepository.findAllByOrderByCreatedAtDesc();
-        
-        // 获取截止到指定日期的累计入库数量（按商品分组）
-        List<Object[]> inboundData = inboundRecordRepository.sumQuantityGroupByProductBeforeDate(date);
-        Map<Long, Integer> inboundMap = new HashMap<>();
-        for (Object[] data : inboundData) {
-            Long productId = (Long) data[0];
-            Integer quantity = ((Number) data[1]).intValue();
-            inboundMap.put(productId, quantity);
-        }
+        return singleFlightCache.get(CacheConfig.HISTORY, date, () -> loadHistoryStock(date));
+    }
+
+    private List<StockExportDTO> loadHistoryStock(LocalDate date) {
+        // 获取所有商品（列表视图，不读取图片数据）
+        List<ProductRepository.ViewRow> products = productRepository.findAllViews();
         
-        // 获取截止到指定日期的累计出库数量（按商品分组）
-        List<Object[]> outboundData = outboundRecordRepository.sumQuantityGroupByProductBeforeDate(date);
-        Map<Long, Integer> outboundMap = new HashMap<>();
-        for (Object[] data : outboundData) {
-            Long productId = (Long) data[0];
-            Integer quantity = ((Number) data[1]).intValue();
-            outboundMap.put(productId, quantity);
-        }
+        // 获取截止到指定日期的累计出入库数量（按商品分组）
+        Map<Long, StockSnapshotService.CumulativeTotals> totalsMap = stockSnapshotService.getTotalsAsOf(date);
         
         // 计算每个商品在指定日期的库存：初始库存 + 累计入库 - 累计出库
         return products.stream()
                 .map(product -> {
-                    Integer totalInbound = inboundMap.getOrDefault(product.getId(), 0);
-                    Integer totalOutbound = outboundMap.getOrDefault(product.getId(), 0);
+                    StockSnapshotService.CumulativeTotals totals = totalsMap.get(product.getId());
+                    Integer totalInbound = totals != null ? totals.getTotalInbound() : 0;
+                    Integer totalOutbound = totals != null ? totals.getTotalOutbound() : 0;
                     
                     // 创建StockExportDTO，构造函数中会自动计算正确的库存
-                    return new StockExportDTO(
+                    return withImageVariants(new StockExportDTO(
                             product.getId(),
                             product.getName(),
                             product.getSpec(),
                             product.getUnit(),
-                            product.getImageUrl(),
+                            imageStorageService.imageUrlOf(product),
                             product.getInitialStock(),
                             product.getPrice(),
                             totalInbound,
                             totalOutbound,
                             date
-                    );
+                    ));
                 })
                 .collect(Collectors.toList());
     }
@@ -300,23 +317,115 @@ public class ProductService {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new RuntimeException("商品不存在，ID: " + productId));
         
-        // 获取累计入库和出库数量
-        Integer totalInbound = inboundRecordRepository.sumQuantityByProductIdBeforeDate(productId, date);
-        Integer totalOutbound = outboundRecordRepository.sumQuantityByProductIdBeforeDate(productId, date);
+        // 获取累计入库和出库数量（优先使用商品库存时间索引）
+        StockSnapshotService.CumulativeTotals totals = stockTimelineService.getTotalsAsOf(productId, date);
         
         // 创建DTO，构造函数中会自动计算正确的库存
-        return new StockExportDTO(
+        return withImageVariants(new StockExportDTO(
                 product.getId(),
                 product.getName(),
                 product.getSpec(),
                 product.getUnit(),
-                product.getImageUrl(),
+                imageStorageService.imageUrlOf(product),
                 product.getInitialStock(),
                 product.getPrice(),
-                totalInbound,
-                totalOutbound,
+                totals.getTotalInbound(),
+                totals.getTotalOutbound(),
                 date
-        );
+        ));
+    }
+
+    /**
+     * 获取所有商品在日期区间内按间隔取样的库存矩阵
+     * 以起始日期的累计量为基础，按日期顺序一次遍历区间内的每日出入库汇总，遇到取样日期时输出一列
+     */
+    public StockMatrixDTO getHistoryStockRange(LocalDate fromDate, LocalDate toDate, int step) {
+        return singleFlightCache.execute("historyRange:" + fromDate + ":" + toDate + ":" + step,
+                () -> loadHistoryStockRange(fromDate, toDate, step));
+    }
+
+    private StockMatrixDTO loadHistoryStockRange(LocalDate fromDate, LocalDate toDate, int step) {
+        List<Object[]> products = productRepository.findMatrixBasis();
+        int productCount = products.size();
+
+        List<Long> productIds = new ArrayList<>(productCount);
+        List<String> productNames = new ArrayList<>(productCount);
+        List<String> specs = new ArrayList<>(productCount);
+        List<String> units = new ArrayList<>(productCount);
+        List<BigDecimal> unitPrices = new ArrayList<>(productCount);
+        LongLongHashMap rowById = new LongLongHashMap(productCount);
+        int[] current = new int[productCount];
+
+        // 起始日期（含）的库存作为基础
+        Map<Long, StockSnapshotService.CumulativeTotals> baseTotals = stockSnapshotService.getTotalsAsOf(fromDate);
+        for (int row = 0; row < productCount; row++) {
+            Object[] basis = products.get(row);
+            Long productId = (Long) basis[0];
+            productIds.add(productId);
+            productNames.add((String) basis[1]);
+            specs.add((String) basis[2]);
+            units.add((String) basis[3]);
+            unitPrices.add((BigDecimal) basis[5]);
+            rowById.put(productId, row, -1L);
+
+            StockSnapshotService.CumulativeTotals totals = baseTotals.get(productId);
+            current[row] = (Integer) basis[4]
+                    + (totals != null ? totals.getTotalInbound() - totals.getTotalOutbound() : 0);
+        }
+
+        // (fromDate, toDate] 内的每日变化量，均已按日期排序
+        List<Object[]> inboundRows = inboundRecordRepository.sumQuantityGroupByProductAndDateBetween(fromDate, toDate);
+        List<Object[]> outboundRows = outboundRecordRepository.sumQuantityGroupByProductAndDateBetween(fromDate, toDate);
+        int inboundIndex = 0;
+        int outboundIndex = 0;
+
+        List<LocalDate> dates = new ArrayList<>();
+        List<int[]> stock = new ArrayList<>();
+        List<BigDecimal> totalValues = new ArrayList<>();
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(step)) {
+            for (; inboundIndex < inboundRows.size(); inboundIndex++) {
+                Object[] row = inboundRows.get(inboundIndex);
+                if (((LocalDate) row[1]).isAfter(date)) {
+                    break;
+                }
+                int index = (int) rowById.get((Long) row[0], -1L);
+                if (index >= 0) {
+                    current[index] += ((Number) row[2]).intValue();
+                }
+            }
+            for (; outboundIndex < outboundRows.size(); outboundIndex++) {
+                Object[] row = outboundRows.get(outboundIndex);
+                if (((LocalDate) row[1]).isAfter(date)) {
+                    break;
+                }
+                int index = (int) rowById.get((Long) row[0], -1L);
+                if (index >= 0) {
+                    current[index] -= ((Number) row[2]).intValue();
+                }
+            }
+
+            BigDecimal totalValue = BigDecimal.ZERO;
+            for (int row = 0; row < productCount; row++) {
+                totalValue = totalValue.add(unitPrices.get(row).multiply(BigDecimal.valueOf(current[row])));
+            }
+            dates.add(date);
+            stock.add(current.clone());
+            totalValues.add(totalValue);
+        }
+
+        return new StockMatrixDTO(fromDate, toDate, step, dates,
+                productIds, productNames, specs, units, unitPrices, stock, totalValues);
+    }
+
+    /**
+     * 获取指定商品在日期区间内的净变化量（入库 - 出库）
+     */
+    @Transactional(readOnly = true)
+    public Long getProductNetMovement(Long productId, LocalDate fromDate, LocalDate toDate) {
+        if (!productRepository.existsById(productId)) {
+            throw new RuntimeException("商品不存在，ID: " + productId);
+        }
+        return stockTimelineService.getNetMovement(productId, fromDate, toDate);
     }
 
     /**
@@ -327,14 +436,8 @@ public class ProductService {
         Map<String, String> result = new HashMap<>();
         
         // 获取最早的商品创建日期
-        List<Product> products = productRepository.findAllByOrderByCreatedAtDesc();
-        LocalDate minDate = LocalDate.now();
-        if (!products.isEmpty()) {
-            minDate = products.stream()
-                    .map(p -> p.getCreatedAt().toLocalDate())
-                    .min((d1, d2) -> d1.compareTo(d2))
-                    .orElse(LocalDate.now());
-        }
+        LocalDateTime minCreatedAt = productRepository.findMinCreatedAt();
+        LocalDate minDate = minCreatedAt != null ? minCreatedAt.toLocalDate() : LocalDate.now();
         
         // 最大日期为今天
         LocalDate maxDate = LocalDate.now();
@@ -351,58 +454,23 @@ public class ProductService {
     /**
      * 获取商品总数
      */
-    @Cacheable(value = "stats", key = "'productCount'")
-    @Transactional(readOnly = true)
     public Long getProductCount() {
-        return productRepository.count();
+        return singleFlightCache.get(CacheConfig.STATS, "productCount", productRepository::count);
     }
 
     /**
-     * 获取库存总量 - 优化版本
+     * 获取库存总量 - 优先读取内存库存索引，未加载时汇总库存投影
      */
-    @Cacheable(value = "stats", key = "'totalStock'")
-    @Transactional(readOnly = true)
     public Integer getTotalStock() {
+        return singleFlightCache.get(CacheConfig.STATS, "totalStock", this::loadTotalStock);
+    }
+
+    private Integer loadTotalStock() {
         try {
-            // 优化：使用批量查询提高性能
-            List<Product> products = productRepository.findAll();
-            
-            if (products.isEmpty()) {
-                return 0;
+            if (stockIndexService.isLoaded()) {
+                return (int) stockIndexService.getTotalStock();
             }
-            
-            // 提取所有商品ID
-            List<Long> productIds = products.stream()
-                    .map(Product::getId)
-                    .collect(Collectors.toList());
-            
-            // 批量获取入库和出库数据
-            Map<Long, Integer> inboundMap = new HashMap<>();
-            Map<Long, Integer> outboundMap = new HashMap<>();
-            
-            // 使用批量查询优化性能
-            List<Object[]> inboundData = inboundRecordRepository.sumQuantityByProductIds(productIds);
-            for (Object[] data : inboundData) {
-                Long productId = (Long) data[0];
-                Integer quantity = ((Number) data[1]).intValue();
-                inboundMap.put(productId, quantity);
-            }
-            
-            List<Object[]> outboundData = outboundRecordRepository.sumQuantityByProductIds(productIds);
-            for (Object[] data : outboundData) {
-                Long productId = (Long) data[0];
-                Integer quantity = ((Number) data[1]).intValue();
-                outboundMap.put(productId, quantity);
-            }
-            
-            // 计算总库存
-            return products.stream()
-                    .mapToInt(product -> {
-                        Integer inbound = inboundMap.getOrDefault(product.getId(), 0);
-                        Integer outbound = outboundMap.getOrDefault(product.getId(), 0);
-                        return product.getInitialStock() + inbound - outbound;
-                    })
-                    .sum();
+            return productStockRepository.sumCurrentStock().intValue();
         } catch (Exception e) {
             log.error("获取库存总量失败", e);
             throw new RuntimeException("获取库存总量失败: " + e.getMessage());
@@ -410,51 +478,18 @@ public class ProductService {
     }
 
     /**
-     * 获取库存价值 - 优化版本
+     * 获取库存价值 - 优先读取内存库存索引，未加载时汇总库存投影
      */
-    @Cacheable(value = "stats", key = "'stockValue'")
-    @Transactional(readOnly = true)
     public BigDecimal getStockValue() {
+        return singleFlightCache.get(CacheConfig.STATS, "stockValue", this::loadStockValue);
+    }
+
+    private BigDecimal loadStockValue() {
         try {
-            List<Product> products = productRepository.findAll();
-            
-            if (products.isEmpty()) {
-                return BigDecimal.ZERO;
-            }
-            
-            // 提取所有商品ID
-            List<Long> productIds = products.stream()
-                    .map(Product::getId)
-                    .collect(Collectors.toList());
-            
-            // 批量获取入库和出库数据
-            Map<Long, Integer> inboundMap = new HashMap<>();
-            Map<Long, Integer> outboundMap = new HashMap<>();
-            
-            // 使用批量查询优化性能
-            List<Object[]> inboundData = inboundRecordRepository.sumQuantityByProductIds(productIds);
-            for (Object[] data : inboundData) {
-                Long productId = (Long) data[0];
-                Integer quantity = ((Number) data[1]).intValue();
-                inboundMap.put(productId, quantity);
+            if (stockIndexService.isLoaded()) {
+                return stockIndexService.getStockValue();
             }
-            
-            List<Object[]> outboundData = outboundRecordRepository.sumQuantityByProductIds(productIds);
-            for (Object[] data : outboundData) {
-                Long productId = (Long) data[0];
-                Integer quantity = ((Number) data[1]).intValue();
-                outboundMap.put(productId, quantity);
-            }
-            
-            // 计算总价值
-            return products.stream()
-                    .map(product -> {
-                        Integer inbound = inboundMap.getOrDefault(product.getId(), 0);
-                        Integer outbound = outboundMap.getOrDefault(product.getId(), 0);
-                        Integer currentStock = product.getInitialStock() + inbound - outbound;
-                        return product.getPrice().multiply(BigDecimal.valueOf(Math.max(0, currentStock)));
-                    })
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            return productStockRepository.sumStockValue();
         } catch (Exception e) {
             log.error("获取库存价值失败", e);
             throw new RuntimeException("获取库存价值失败: " + e.getMessage());
@@ -462,9 +497,26 @@ public class ProductService {
     }
 
     /**
-     * 转换Entity到DTO（使用缓存的入库出库数据）
+     * 转换列表行到DTO
+     */
+    private ProductDTO convertToDTO(ProductRepository.ListRow row) {
+        return convertToDTO(row, row.getCurrentStock(), row.getTotalOutbound());
+    }
+
+    /**
+     * 转换Entity到DTO（使用库存投影数据）
      */
-    private ProductDTO convertToDTOWithCache(Product product, Map<Long, Integer> inboundMap, Map<Long, Integer> outboundMap) {
+    private ProductDTO convertToDTO(Product product, ProductStock stock) {
+        // 投影尚未建立时按无出入库记录处理：当前库存 = 初始库存
+        return convertToDTO(product,
+                stock != null ? stock.getCurrentStock() : product.getInitialStock(),
+                stock != null ? stock.getTotalOutbound() : 0);
+    }
+
+    /**
+     * 按商品列表视图和实时库存组装DTO
+     */
+    private ProductDTO convertToDTO(ProductView product, Integer realTimeStock, Integer totalOutbound) {
         ProductDTO dto = new ProductDTO();
         dto.setId(product.getId());
         dto.setName(product.getName());
@@ -473,19 +525,17 @@ public class ProductService {
         dto.setInitialStock(product.getInitialStock());
         dto.setPrice(product.getPrice());
         dto.setAmount(product.getAmount());
-        dto.setImageUrl(product.getImageUrl()); // 添加图片URL字段
+        dto.setLowStockThreshold(product.getLowStockThreshold());
+        dto.setImageUrl(imageStorageService.imageUrlOf(product));
+        dto.setThumbnailUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.THUMB));
+        dto.setMediumUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.MEDIUM));
         dto.setCreatedAt(product.getCreatedAt());
         dto.setUpdatedAt(product.getUpdatedAt());
         
-        // 从缓存中获取入库和出库数据
-        Integer totalInbound = inboundMap.get(product.getId());
-        Integer totalOutbound = outboundMap.get(product.getId());
-        
-        // 使用和库存管理页面相同的计算公式：初始库存 + 累计入库 - 累计出库
-        Integer realTimeStock = product.getInitialStock() + 
-                (totalInbound != null ? totalInbound : 0) - 
-                (totalOutbound != null ? totalOutbound : 0);
-        
+        if (realTimeStock == null) {
+            // 未查询库存（字段选择中不含库存字段）
+            return dto;
+        }
         dto.setTotalOutbound(totalOutbound);
         dto.setCurrentStock(realTimeStock); // 使用实时计算的库存
         dto.setRemainingQuantity(realTimeStock); // 统一使用实时计算的库存，确保与currentStock一致
@@ -501,16 +551,7 @@ public class ProductService {
      */
     private ProductDTO convertToDTO(Product product) {
         try {
-            // 单个商品查询时直接查询数据库
-            Integer totalInbound = inboundRecordRepository.sumQuantityByProductId(product.getId());
-            Integer totalOutbound = outboundRecordRepository.sumQuantityByProductId(product.getId());
-            
-            Map<Long, Integer> inboundMap = new HashMap<>();
-            Map<Long, Integer> outboundMap = new HashMap<>();
-            inboundMap.put(product.getId(), totalInbound != null ? totalInbound : 0);
-            outboundMap.put(product.getId(), totalOutbound != null ? totalOutbound : 0);
-            
-            return convertToDTOWithCache(product, inboundMap, outboundMap);
+            return convertToDTO(product, productStockService.getStock(product.getId()));
         } catch (Exception e) {
             log.error("转换商品数据失败，商品ID: {}", product.getId(), e);
             throw new RuntimeException("转换商品数据失败: " + e.getMessage());
@@ -528,6 +569,21 @@ public class ProductService {
         product.setPrice(dto.getPrice());
         product.setAmount(dto.getAmount());
         product.setRemainingQuantity(dto.getRemainingQuantity());
-        product.setImageUrl(dto.getImageUrl()); // 添加图片URL字段
+        product.setLowStockThreshold(dto.getLowStockThreshold());
+        String previousHash = product.getImageHash();
+        imageStorageService.assignImage(product, dto.getImageUrl());
+        if (!Objects.equals(previousHash, product.getImageHash())) {
+            // 图片变化时在提交后异步生成缩略图和中图，不阻塞保存
+            imageVariantService.generateAfterCommit(product.getImageHash());
+        }
+    }
+
+    /**
+     * 填充图片尺寸变体地址
+     */
+    private StockExportDTO withImageVariants(StockExportDTO dto) {
+        dto.setThumbnailUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.THUMB));
+        dto.setMediumUrl(imageVariantService.variantUrl(dto.getImageUrl(), ImageVariantService.Variant.MEDIUM));
+        return dto;
     }
 }
@@ -0,0 +1,260 @@
+package com.shelf.service;
+
+import com.shelf.entity.Product;
+import com.shelf.entity.ProductStock;
+import com.shelf.repository.InboundRecordRepository;
+import com.shelf.repository.OutboundRecordRepository;
+import com.shelf.repository.ProductRepository;
+import com.shelf.repository.ProductStockRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商品库存投影维护服务
+ * 出入库记录的新增、修改、删除在同一事务内增量更新 product_stock，
+ * 读路径只需关联投影表，不再汇总全部出入库历史。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductStockService {
+
+    private final ProductStockRepository productStockRepository;
+    private final ProductRepository productRepository;
+    private final InboundRecordRepository inboundRecordRepository;
+    private final OutboundRecordRepository outboundRecordRepository;
+    private final StockSnapshotService stockSnapshotService;
+    private final DataChangeBus dataChangeBus;
+    private final StockTimelineService stockTimelineService;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * 记录入库数量变化（负数表示撤销入库），同时回填入库日期之后的历史快照
+     * 须在入库记录写入或删除之后调用
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyInbound(Product product, LocalDate inDate, int quantityDelta) {
+        applyMovement(product, quantityDelta, 0);
+        recordDatedMovement(product.getId(), inDate, quantityDelta, 0);
+    }
+
+    /**
+     * 入库记录修改：撤销原商品、原日期的数量，按新商品、新日期计入
+     * 须在入库记录保存之后调用
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void moveInbound(Product oldProduct, LocalDate oldDate, int oldQuantity,
+                            Product newProduct, LocalDate newDate, int newQuantity) {
+        if (oldProduct.getId().equals(newProduct.getId())) {
+            applyMovement(newProduct, newQuantity - oldQuantity, 0);
+        } else {
+            applyMovement(oldProduct, -oldQuantity, 0);
+            applyMovement(newProduct, newQuantity, 0);
+        }
+        recordDatedMovement(oldProduct.getId(), oldDate, -oldQuantity, 0);
+        recordDatedMovement(newProduct.getId(), newDate, newQuantity, 0);
+    }
+
+    /**
+     * 记录出库数量变化（负数表示撤销出库），同时回填出库日期之后的历史快照
+     * 须在出库记录写入或删除之后调用
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyOutbound(Product product, LocalDate outDate, int quantityDelta) {
+        applyMovement(product, 0, quantityDelta);
+        recordDatedMovement(product.getId(), outDate, 0, quantityDelta);
+    }
+
+    /**
+     * 出库记录修改：撤销原商品、原日期的数量，按新商品、新日期计入
+     * 须在出库记录保存之后调用
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void moveOutbound(Product oldProduct, LocalDate oldDate, int oldQuantity,
+                             Product newProduct, LocalDate newDate, int newQuantity) {
+        if (oldProduct.getId().equals(newProduct.getId())) {
+            applyMovement(newProduct, 0, newQuantity - oldQuantity);
+        } else {
+            applyMovement(oldProduct, 0, -oldQuantity);
+            applyMovement(newProduct, 0, newQuantity);
+        }
+        recordDatedMovement(oldProduct.getId(), oldDate, 0, -oldQuantity);
+        recordDatedMovement(newProduct.getId(), newDate, 0, newQuantity);
+    }
+
+    /**
+     * 商品新增或修改后刷新投影（初始库存、单价变化会影响当前库存和库存价值）
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void refreshProduct(Product product) {
+        applyMovement(product, 0, 0);
+    }
+
+    /**
+     * 删除商品时移除投影
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeProduct(Long productId) {
+        stockSnapshotService.removeProduct(productId);
+        stockTimelineService.removeProduct(productId);
+        productStockRepository.findByIdForUpdate(productId).ifPresent(stock -> {
+            dataChangeBus.stockChanged(productId, -stock.getCurrentStock(), stock.getStockValue().negate(), null, null);
+            productStockRepository.delete(stock);
+        });
+        dataChangeBus.productRemoved(productId);
+    }
+
+    /**
+     * 查询单个商品的库存投影，不存在时返回null
+     */
+    @Transactional(readOnly = true)
+    public ProductStock getStock(Long productId) {
+        return productStockRepository.findById(productId).orElse(null);
+    }
+
+    /**
+     * 投影是否缺失（商品数多于投影数时需要重建）
+     */
+    @Transactional(readOnly = true)
+    public boolean isIncomplete() {
+        return productStockRepository.count() < productRepository.count();
+    }
+
+    /**
+     * 从原始出入库记录分批重建库存投影
+     *
+     * @param chunkSize 每批处理的商品数量，每批使用独立事务
+     * @return 重建的商品数量
+     */
+    public int rebuild(int chunkSize) {
+        int batchSize = Math.max(1, chunkSize);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long startTime = System.currentTimeMillis();
+        long afterId = 0L;
+        int rebuilt = 0;
+
+        while (true) {
+            List<Long> productIds = productRepository.findIdsAfter(afterId, PageRequest.of(0, batchSize));
+            if (productIds.isEmpty()) {
+                break;
+            }
+            Integer count = transactionTemplate.execute(status -> rebuildChunk(productIds));
+            rebuilt += count != null ? count : 0;
+            afterId = productIds.get(productIds.size() - 1);
+        }
+
+        Integer orphans = transactionTemplate.execute(status -> productStockRepository.deleteOrphans());
+        log.info("库存投影重建完成，商品数: {}，清理孤立记录: {}，耗时: {}ms",
+                rebuilt, orphans, System.currentTimeMillis() - startTime);
+        dataChangeBus.reset();
+        return rebuilt;
+    }
+
+    /**
+     * 重建一批商品的投影：先锁定已有投影行，再汇总原始记录，避免与并发写入互相覆盖
+     */
+    private int rebuildChunk(List<Long> productIds) {
+        Map<Long, ProductStock> existing = new HashMap<>();
+        for (ProductStock stock : productStockRepository.findAllByIdForUpdate(productIds)) {
+            existing.put(stock.getProductId(), stock);
+        }
+
+        Map<Long, Integer> inboundMap = toQuantityMap(inboundRecordRepository.sumQuantityByProductIds(productIds));
+        Map<Long, Integer> outboundMap = toQuantityMap(outboundRecordRepository.sumQuantityByProductIds(productIds));
+
+        int count = 0;
+        for (Object[] basis : productRepository.findStockBasisByIds(productIds)) {
+            Long productId = (Long) basis[0];
+            Integer initialStock = (Integer) basis[1];
+            BigDecimal price = (BigDecimal) basis[2];
+
+            ProductStock stock = existing.computeIfAbsent(productId, id -> {
+                ProductStock created = new ProductStock();
+                created.setProductId(id);
+                return created;
+            });
+            stock.setTotalInbound(inboundMap.getOrDefault(productId, 0));
+            stock.setTotalOutbound(outboundMap.getOrDefault(productId, 0));
+            recalculate(stock, initialStock, price);
+            productStockRepository.save(stock);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 在当前事务内加锁更新单个商品的投影
+     * 投影缺失时先插入不含本次变化的初始值（已存在则不插入），再加锁叠加本次变化，并发首次写入不会重复插入或重复计入
+     */
+    private void applyMovement(Product product, int inboundDelta, int outboundDelta) {
+        // 先用普通读判断投影是否存在：对不存在的行加锁读在 MySQL 上会加间隙锁，并发插入时互相死锁
+        boolean created = !productStockRepository.existsById(product.getId())
+                && initialize(product.getId(), inboundDelta, outboundDelta);
+        ProductStock stock = productStockRepository.findByIdForUpdate(product.getId())
+                .orElseThrow(() -> new RuntimeException("商品库存投影不存在: " + product.getId()));
+        int previousStock = created ? 0 : stock.getCurrentStock();
+        BigDecimal previousValue = created ? BigDecimal.ZERO : stock.getStockValue();
+        stock.setTotalInbound(stock.getTotalInbound() + inboundDelta);
+        stock.setTotalOutbound(stock.getTotalOutbound() + outboundDelta);
+        recalculate(stock, product.getInitialStock(), product.getPrice());
+        productStockRepository.save(stock);
+        dataChangeBus.stockChanged(product.getId(), stock.getCurrentStock() - previousStock,
+                stock.getStockValue().subtract(previousValue), product.getPrice(), product.getLowStockThreshold());
+    }
+
+    /**
+     * 按业务日期记录的变化：回填历史快照、更新商品库存时间索引，并登记失效的历史日期
+     */
+    private void recordDatedMovement(Long productId, LocalDate date, int inboundDelta, int outboundDelta) {
+        stockSnapshotService.applyMovement(productId, date, inboundDelta, outboundDelta);
+        stockTimelineService.onMovement(productId, date, inboundDelta, outboundDelta);
+        dataChangeBus.movementDated(productId, date);
+        dataChangeBus.recordsChanged(productId, inboundDelta != 0, outboundDelta != 0);
+    }
+
+    /**
+     * 投影缺失时从原始记录初始化（兼容投影表建立之前的历史数据）
+     * 本次写入已在同一事务内落库，初始值扣除本次变化量，由调用方加锁后统一叠加
+     *
+     * @return 是否由本事务插入了投影行（其他事务已插入时为false）
+     */
+    private boolean initialize(Long productId, int inboundDelta, int outboundDelta) {
+        Integer totalInbound = inboundRecordRepository.sumQuantityByProductId(productId);
+        Integer totalOutbound = outboundRecordRepository.sumQuantityByProductId(productId);
+        return productStockRepository.insertIfAbsent(productId,
+                (totalInbound != null ? totalInbound : 0) - inboundDelta,
+                (totalOutbound != null ? totalOutbound : 0) - outboundDelta);
+    }
+
+    /**
+     * 计算当前库存（初始库存 + 累计入库 - 累计出库）和库存价值
+     */
+    private void recalculate(ProductStock stock, Integer initialStock, BigDecimal price) {
+        int currentStock = (initialStock != null ? initialStock : 0)
+                + stock.getTotalInbound() - stock.getTotalOutbound();
+        stock.setCurrentStock(currentStock);
+        stock.setStockValue(currentStock > 0 && price != null ?
+                price.multiply(BigDecimal.valueOf(currentStock)) :
+                BigDecimal.ZERO);
+    }
+
+    private Map<Long, Integer> toQuantityMap(List<Object[]> rows) {
+        Map<Long, Integer> result = new HashMap<>();
+        for (Object[] data : rows) {
+            result.put((Long) data[0], ((Number) data[1]).intValue());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,190 @@
+package com.shelf.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 聚合查询的合并执行与提前刷新
+ * 同一个键的并发请求共享一次正在进行的计算（CompletableFuture），不再各自占用数据库连接重复计算；
+ * 命中的缓存项存活超过过期时间的一定比例时在后台提前重新计算，热点键不会因过期而集中回源。
+ * 计算期间有事务提交时不写入缓存，避免覆盖提交回调已修正过的缓存值。
+ * 调用方应在事务之外调用：只有执行计算的线程开启只读事务，等待同一计算结果的线程不占用数据库连接。
+ */
+@Slf4j
+@Component
+public class SingleFlightCache {
+
+    private final CacheManager cacheManager;
+    private final DataChangeBus dataChangeBus;
+    private final TransactionTemplate readOnlyTransaction;
+    private final double refreshAheadRatio;
+    private final ExecutorService refresher;
+
+    private final ConcurrentHashMap<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public SingleFlightCache(CacheManager cacheManager,
+                             DataChangeBus dataChangeBus,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${cache.refresh-ahead.ratio:0.8}") double refreshAheadRatio,
+                             @Value("${cache.refresh-ahead.threads:2}") int refreshThreads) {
+        this.cacheManager = cacheManager;
+        this.dataChangeBus = dataChangeBus;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.refreshAheadRatio = refreshAheadRatio;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.refresher = Executors.newFixedThreadPool(Math.max(1, refreshThreads), runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 读取缓存，未命中时合并执行计算并写入缓存；命中但即将过期时在后台提前刷新
+     * 计算在只读事务内执行（调用方已在只读事务内时加入该事务）
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String cacheName, Object key, Supplier<T> loader) {
+        if (!readsCommittedOnly()) {
+            return loader.get();
+        }
+        Cache<Object, Object> cache = nativeCache(cacheName);
+        if (cache == null) {
+            return execute(List.of(key), loader);
+        }
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (shouldRefresh(cache, key)) {
+                refreshAsync(cacheName, cache, key, loader);
+            }
+            return (T) cached;
+        }
+        return (T) join(List.of(cacheName, key),
+                () -> readOnlyTransaction.execute(status -> load(cache, key, loader)));
+    }
+
+    /**
+     * 不缓存结果，只合并同一个键的并发计算
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> loader) {
+        if (!readsCommittedOnly()) {
+            return loader.get();
+        }
+        return (T) join(List.of(key), () -> readOnlyTransaction.execute(status -> loader.get()));
+    }
+
+    /**
+     * 加入同一个键正在进行的计算；没有时由当前线程计算，完成后唤醒等待者
+     */
+    private Object join(List<Object> flightKey, Supplier<Object> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            Object value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, future);
+        }
+    }
+
+    /**
+     * 计算并在期间没有提交发生时写入缓存
+     */
+    private Object load(Cache<Object, Object> cache, Object key, Supplier<?> loader) {
+        long stamp = dataChangeBus.stamp();
+        Object value = loader.get();
+        if (value != null) {
+            // 与提交回调对同一个键的修正互斥：判断和写入在同一个原子操作内完成
+            cache.asMap().compute(key, (k, current) -> dataChangeBus.unchangedSince(stamp) ? value : current);
+        }
+        return value;
+    }
+
+    /**
+     * 后台提前刷新，同一个键同时只刷新一次
+     */
+    private void refreshAsync(String cacheName, Cache<Object, Object> cache, Object key, Supplier<?> loader) {
+        List<Object> flightKey = List.of(cacheName, key);
+        if (inFlight.containsKey(flightKey)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    join(flightKey, () -> readOnlyTransaction.execute(status -> load(cache, key, loader)));
+                } catch (Exception e) {
+                    log.warn("缓存提前刷新失败，缓存: {}，键: {}", cacheName, key, e);
+                }
+            });
+        } catch (Exception e) {
+            log.debug("缓存提前刷新任务未提交: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存项存活时间超过 expireAfterWrite 的 refreshAheadRatio 时需要刷新
+     */
+    private boolean shouldRefresh(Cache<Object, Object> cache, Object key) {
+        if (refreshAheadRatio <= 0 || refreshAheadRatio >= 1) {
+            return false;
+        }
+        Optional<Policy.FixedExpiration<Object, Object>> expiration = cache.policy().expireAfterWrite();
+        if (expiration.isEmpty()) {
+            return false;
+        }
+        Optional<Duration> age = expiration.get().ageOf(key);
+        return age.isPresent()
+                && age.get().toMillis() >= expiration.get().getExpiresAfter().toMillis() * refreshAheadRatio;
+    }
+
+    /**
+     * 写事务内读到的可能是本事务未提交的修改，既不能缓存也不能共享给其他请求
+     */
+    private boolean readsCommittedOnly() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<Object, Object> nativeCache(String name) {
+        org.springframework.cache.Cache cache = cacheManager.getCache(name);
+        return cache != null ? (Cache<Object, Object>) cache.getNativeCache() : null;
+    }
+}
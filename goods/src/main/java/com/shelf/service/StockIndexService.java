@@ -0,0 +1,284 @@
+package com.shelf.service;
+
+import com.shelf.repository.ProductStockRepository;
+import com.shelf.util.LongLongHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 内存库存索引
+ * 启动时从库存投影加载商品ID -> 当前库存、商品ID -> 单价（分），并维护库存总量和库存价值的累计值；
+ * 出入库写入提交后由 {@link DataChangeBus} 通知，按变化量增量更新，首页统计直接读取累计值，不再扫描商品表。
+ * 同时按当前库存维护有序集合，库存不足查询只需范围扫描，不再访问出入库记录表。
+ */
+@Slf4j
+@Service
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StockIndexService implements DataChangeListener {
+
+    /** 读取期间有提交发生时的最多读取次数 */
+    private static final int LOAD_ATTEMPTS = 10;
+
+    private final ProductStockRepository productStockRepository;
+    private final DataChangeBus dataChangeBus;
+    private final TransactionTemplate readTransaction;
+
+    private final LongLongHashMap stockById = new LongLongHashMap(1024);
+    private final LongLongHashMap priceCentsById = new LongLongHashMap(1024);
+    /** 单独设置了库存预警值的商品 */
+    private final LongLongHashMap thresholdById = new LongLongHashMap(256);
+    /** 未设置预警值的商品，按 (当前库存, 商品ID) 排序 */
+    private final NavigableSet<StockKey> byStock = new TreeSet<>(StockKey.ORDER);
+    /** 设置了预警值的商品，按 (当前库存 - 预警值, 商品ID) 排序 */
+    private final NavigableSet<StockKey> byShortfall = new TreeSet<>(StockKey.ORDER);
+    private long totalStock;
+    private long stockValueCents;
+    private volatile boolean loaded;
+
+    public StockIndexService(ProductStockRepository productStockRepository,
+                             DataChangeBus dataChangeBus,
+                             PlatformTransactionManager transactionManager) {
+        this.productStockRepository = productStockRepository;
+        this.dataChangeBus = dataChangeBus;
+        // 每次读取使用新事务：MySQL 可重复读下同一事务内重读仍是旧快照，提交回调中原事务也已结束
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 从库存投影全量加载索引（启动时和投影重建后调用）
+     * 多次读取期间都有提交发生时标记为未加载，调用方回退到数据库查询，由 {@link #retryLoad} 定时重新加载
+     */
+    public void reload() {
+        long startTime = System.currentTimeMillis();
+        List<Object[]> rows = readUnchanged(productStockRepository::findIndexRows, loadedRows -> {
+            stockById.clear();
+            priceCentsById.clear();
+            thresholdById.clear();
+            byStock.clear();
+            byShortfall.clear();
+            totalStock = 0L;
+            stockValueCents = 0L;
+            for (Object[] row : loadedRows) {
+                put((Long) row[0], (Integer) row[1], toCents((BigDecimal) row[2]), (Integer) row[3]);
+            }
+        });
+        loaded = rows != null;
+        if (rows != null) {
+            log.info("内存库存索引加载完成，商品数: {}，耗时: {}ms", rows.size(), System.currentTimeMillis() - startTime);
+        } else {
+            log.warn("内存库存索引加载期间持续有数据提交，已重试{}次，暂时回退到数据库查询", LOAD_ATTEMPTS);
+        }
+    }
+
+    /**
+     * 索引未加载（加载或同步其他节点变化时持续有提交）时定时重新加载，已加载时不做任何操作
+     */
+    @Scheduled(initialDelayString = "${stock.index.retry-interval-ms:30000}",
+               fixedDelayString = "${stock.index.retry-interval-ms:30000}")
+    public void retryLoad() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    /**
+     * 索引是否已加载，未加载时调用方应回退到数据库查询
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 库存总量
+     */
+    public synchronized long getTotalStock() {
+        return totalStock;
+    }
+
+    /**
+     * 库存价值（库存为正的商品单价 × 库存之和）
+     */
+    public synchronized BigDecimal getStockValue() {
+        return BigDecimal.valueOf(stockValueCents, 2);
+    }
+
+    /**
+     * 单个商品的当前库存，不在索引中时返回默认值
+     */
+    public synchronized int getStock(Long productId, int defaultValue) {
+        return (int) stockById.get(productId, defaultValue);
+    }
+
+    /**
+     * 查询库存不足的商品ID，按当前库存升序
+     * 设置了预警值的商品按自身预警值判断，其余商品按传入的默认预警值判断
+     */
+    public synchronized List<Long> findLowStock(int defaultThreshold) {
+        List<StockKey> matched = new ArrayList<>();
+        for (StockKey key : byStock.headSet(new StockKey(defaultThreshold, Long.MIN_VALUE), false)) {
+            matched.add(key);
+        }
+        for (StockKey key : byShortfall.headSet(new StockKey(0L, Long.MIN_VALUE), false)) {
+            matched.add(new StockKey(stockById.get(key.productId(), 0L), key.productId()));
+        }
+        matched.sort(StockKey.ORDER);
+
+        List<Long> productIds = new ArrayList<>(matched.size());
+        for (StockKey key : matched) {
+            productIds.add(key.productId());
+        }
+        return productIds;
+    }
+
+    /**
+     * 事务提交后按商品变化更新索引（需先于缓存同步执行，缓存重新计算时读到的是新值）
+     */
+    @Override
+    public void onChanges(Collection<ProductChange> changes) {
+        for (ProductChange change : changes) {
+            if (change.isRemoved()) {
+                remove(change.getProductId());
+            } else if (change.isStockChanged()) {
+                apply(change.getProductId(), change.getStockDelta(), toCents(change.getPrice()),
+                        change.getLowStockThreshold());
+            }
+        }
+    }
+
+    /**
+     * 其他节点提交的变化：重新读取受影响商品的库存投影，不累加变化量
+     * 本节点在对方提交之后、通知送达之前加载的数据可能已包含该变化，再累加会重复计算
+     */
+    @Override
+    public void onRemoteChanges(Collection<ProductChange> changes) {
+        List<Long> productIds = new ArrayList<>();
+        for (ProductChange change : changes) {
+            if (change.isRemoved() || change.isStockChanged()) {
+                productIds.add(change.getProductId());
+            }
+        }
+        if (productIds.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = readUnchanged(() -> productStockRepository.findIndexRowsByIds(productIds), loadedRows -> {
+            // 查不到的商品已被删除
+            for (Long productId : productIds) {
+                remove(productId);
+            }
+            for (Object[] row : loadedRows) {
+                put((Long) row[0], (Integer) row[1], toCents((BigDecimal) row[2]), (Integer) row[3]);
+            }
+        });
+        if (rows == null) {
+            loaded = false;
+            log.warn("同步其他节点的库存变化期间持续有数据提交，内存库存索引暂时回退到数据库查询");
+        }
+    }
+
+    /**
+     * 库存投影重建后全量重新加载
+     */
+    @Override
+    public void onReset() {
+        reload();
+    }
+
+    /**
+     * 读取期间没有提交发生时，在索引锁内应用读取结果并返回；否则稍后重读，多次仍未成功时返回 null
+     * 读取完成后才开始的提交，其变化量在应用之后累加；读取期间发生的提交可能已包含在结果中，整体作废
+     */
+    private List<Object[]> readUnchanged(Supplier<List<Object[]>> reader, Consumer<List<Object[]>> action) {
+        for (int attempt = 1; attempt <= LOAD_ATTEMPTS; attempt++) {
+            long stamp = dataChangeBus.stamp();
+            if (stamp >= 0) {
+                List<Object[]> rows = readTransaction.execute(status -> reader.get());
+                synchronized (this) {
+                    if (dataChangeBus.unchangedSince(stamp)) {
+                        action.accept(rows);
+                        return rows;
+                    }
+                }
+            }
+            try {
+                Thread.sleep(20L * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 库存按变化量累加（并发事务的提交回调顺序不确定，变化量可交换，结果与提交顺序无关）
+     */
+    private synchronized void apply(long productId, int stockDelta, long priceCents, Integer lowStockThreshold) {
+        int stock = remove(productId) + stockDelta;
+        put(productId, stock, priceCents, lowStockThreshold);
+    }
+
+    private synchronized int remove(long productId) {
+        if (!stockById.containsKey(productId)) {
+            return 0;
+        }
+        int stock = (int) stockById.remove(productId, 0L);
+        long priceCents = priceCentsById.remove(productId, 0L);
+        if (thresholdById.containsKey(productId)) {
+            long threshold = thresholdById.remove(productId, 0L);
+            byShortfall.remove(new StockKey(stock - threshold, productId));
+        } else {
+            byStock.remove(new StockKey(stock, productId));
+        }
+        totalStock -= stock;
+        stockValueCents -= valueCents(stock, priceCents);
+        return stock;
+    }
+
+    private void put(long productId, int stock, long priceCents, Integer lowStockThreshold) {
+        stockById.put(productId, stock, 0L);
+        priceCentsById.put(productId, priceCents, 0L);
+        if (lowStockThreshold != null) {
+            thresholdById.put(productId, lowStockThreshold, 0L);
+            byShortfall.add(new StockKey((long) stock - lowStockThreshold, productId));
+        } else {
+            byStock.add(new StockKey(stock, productId));
+        }
+        totalStock += stock;
+        stockValueCents += valueCents(stock, priceCents);
+    }
+
+    private static long valueCents(int stock, long priceCents) {
+        return stock > 0 ? priceCents * stock : 0L;
+    }
+
+    private static long toCents(BigDecimal price) {
+        return price != null ? price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue() : 0L;
+    }
+
+    /**
+     * 有序集合的排序键
+     */
+    private record StockKey(long value, long productId) {
+        static final Comparator<StockKey> ORDER =
+                Comparator.comparingLong(StockKey::value).thenComparingLong(StockKey::productId);
+    }
+}
@@ -0,0 +1,384 @@
+package com.shelf.service;
+
+import com.shelf.entity.StockSnapshot;
+import com.shelf.repository.InboundRecordRepository;
+import com.shelf.repository.OutboundRecordRepository;
+import com.shelf.repository.ProductRepository;
+import com.shelf.repository.ProductStockRepository;
+import com.shelf.repository.StockSnapshotRepository;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 库存快照服务
+ * 按固定周期（默认每天）保存每个商品截止到快照日期的累计出入库数量，
+ * 历史库存查询 = 最近快照 + 快照日期之后到查询日期之间的增量记录。
+ */
+@Slf4j
+@Service
+public class StockSnapshotService {
+
+    private final StockSnapshotRepository stockSnapshotRepository;
+    private final ProductStockRepository productStockRepository;
+    private final ProductRepository productRepository;
+    private final InboundRecordRepository inboundRecordRepository;
+    private final OutboundRecordRepository outboundRecordRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${stock.snapshot.period-days:1}")
+    private int periodDays;
+
+    public StockSnapshotService(StockSnapshotRepository stockSnapshotRepository,
+                                ProductStockRepository productStockRepository,
+                                ProductRepository productRepository,
+                                InboundRecordRepository inboundRecordRepository,
+                                OutboundRecordRepository outboundRecordRepository,
+                                PlatformTransactionManager transactionManager) {
+        this.stockSnapshotRepository = stockSnapshotRepository;
+        this.productStockRepository = productStockRepository;
+        this.productRepository = productRepository;
+        this.inboundRecordRepository = inboundRecordRepository;
+        this.outboundRecordRepository = outboundRecordRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 累计出入库数量
+     */
+    @Data
+    @AllArgsConstructor
+    public static class CumulativeTotals {
+        private int totalInbound;
+        private int totalOutbound;
+    }
+
+    /**
+     * 查询所有商品截止到指定日期（含）的累计出入库数量：最近快照 + 增量记录
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, CumulativeTotals> getTotalsAsOf(LocalDate date) {
+        Map<Long, CumulativeTotals> result = new HashMap<>();
+        LocalDate snapshotDate = stockSnapshotRepository.findLatestSnapshotDateOnOrBefore(date);
+
+        if (snapshotDate == null) {
+            // 没有可用快照，直接汇总原始记录
+            mergeInbound(result, inboundRecordRepository.sumQuantityGroupByProductBeforeDate(date));
+            mergeOutbound(result, outboundRecordRepository.sumQuantityGroupByProductBeforeDate(date));
+            return result;
+        }
+
+        for (Object[] row : stockSnapshotRepository.findTotalsBySnapshotDate(snapshotDate)) {
+            result.put((Long) row[0], new CumulativeTotals((Integer) row[1], (Integer) row[2]));
+        }
+        if (snapshotDate.isBefore(date)) {
+            mergeInbound(result, inboundRecordRepository.sumQuantityGroupByProductBetween(snapshotDate, date));
+            mergeOutbound(result, outboundRecordRepository.sumQuantityGroupByProductBetween(snapshotDate, date));
+        }
+        return result;
+    }
+
+    /**
+     * 查询单个商品截止到指定日期（含）的累计出入库数量
+     */
+    @Transactional(readOnly = true)
+    public CumulativeTotals getTotalsAsOf(Long productId, LocalDate date) {
+        StockSnapshot snapshot = stockSnapshotRepository
+                .findFirstByProductIdAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(productId, date)
+                .orElse(null);
+
+        if (snapshot == null) {
+            return new CumulativeTotals(
+                    inboundRecordRepository.sumQuantityByProductIdBeforeDate(productId, date),
+                    outboundRecordRepository.sumQuantityByProductIdBeforeDate(productId, date));
+        }
+
+        int totalInbound = snapshot.getTotalInbound();
+        int totalOutbound = snapshot.getTotalOutbound();
+        if (snapshot.getSnapshotDate().isBefore(date)) {
+            totalInbound += inboundRecordRepository.sumQuantityByProductIdBetween(
+                    productId, snapshot.getSnapshotDate(), date);
+            totalOutbound += outboundRecordRepository.sumQuantityByProductIdBetween(
+                    productId, snapshot.getSnapshotDate(), date);
+        }
+        return new CumulativeTotals(totalInbound, totalOutbound);
+    }
+
+    /**
+     * 出入库记录变化时回填历史快照：业务日期（含）之后的所有快照同步加上变化量
+     * 商品在某个快照日期没有记录说明当时累计量为0，直接补一条变化量记录
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyMovement(Long productId, LocalDate date, int inboundDelta, int outboundDelta) {
+        if (date == null || (inboundDelta == 0 && outboundDelta == 0)) {
+            return;
+        }
+        // 加锁读取：MySQL 可重复读下普通查询沿用事务开始时的快照，看不到刚提交的快照日期
+        Set<LocalDate> snapshotDates = new TreeSet<>(stockSnapshotRepository.findSnapshotDatesFrom(date));
+        if (snapshotDates.isEmpty()) {
+            return;
+        }
+
+        int updated = stockSnapshotRepository.addDeltaFrom(productId, date, inboundDelta, outboundDelta);
+        if (updated < snapshotDates.size()) {
+            Set<LocalDate> existing = new HashSet<>(
+                    stockSnapshotRepository.findSnapshotDatesByProductFrom(productId, date));
+            List<StockSnapshot> missing = new ArrayList<>();
+            for (LocalDate snapshotDate : snapshotDates) {
+                if (!existing.contains(snapshotDate)) {
+                    StockSnapshot snapshot = new StockSnapshot();
+                    snapshot.setProductId(productId);
+                    snapshot.setSnapshotDate(snapshotDate);
+                    snapshot.setTotalInbound(inboundDelta);
+                    snapshot.setTotalOutbound(outboundDelta);
+                    missing.add(snapshot);
+                }
+            }
+            stockSnapshotRepository.saveAll(missing);
+        }
+        log.debug("回填历史快照，商品ID: {}，起始日期: {}，入库变化: {}，出库变化: {}",
+                productId, date, inboundDelta, outboundDelta);
+    }
+
+    /**
+     * 删除商品时清理快照
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeProduct(Long productId) {
+        stockSnapshotRepository.deleteByProductId(productId);
+    }
+
+    /**
+     * 定时生成快照：从最近一次快照向前滚动，补齐到昨天为止的所有快照周期
+     * 目标日期之前的周期（首次部署时的历史回填）不加锁逐个写入，只有最后一个周期锁定库存投影写入，
+     * 回填期间并发的历史日期出入库可能漏计，在最后一步加锁后按原始记录核对并修复
+     */
+    @Scheduled(initialDelayString = "${stock.snapshot.initial-delay-ms:60000}",
+               fixedDelayString = "${stock.snapshot.check-interval-ms:3600000}")
+    public void takeSnapshots() {
+        try {
+            int period = Math.max(1, periodDays);
+            LocalDate target = alignDown(LocalDate.now().minusDays(1), period);
+            LocalDate cutoff = target.minusDays(period);
+
+            int created = 0;
+            LocalDate latest = null;
+            LocalDate written;
+            try {
+                while ((written = transactionTemplate.execute(status -> backfillNextSnapshot(period, cutoff))) != null) {
+                    latest = written;
+                    created++;
+                }
+            } catch (DataIntegrityViolationException e) {
+                log.info("其他节点正在回填库存快照，本次跳过");
+                return;
+            }
+            boolean backfilled = created > 0;
+            while ((written = transactionTemplate.execute(status -> writeNextSnapshot(period, target, backfilled))) != null) {
+                latest = written;
+                created++;
+            }
+            if (created > 0) {
+                log.info("库存快照生成完成，新增快照周期数: {}，最新快照日期: {}", created, latest);
+            }
+        } catch (Exception e) {
+            log.error("生成库存快照失败", e);
+        }
+    }
+
+    /**
+     * 不加锁写入截止日期（含）之前的下一个快照周期，已补齐或没有可写入的累计量时返回 null
+     * 只读取原始记录和已有快照，不阻塞出入库写入；多个节点同时回填同一日期时后提交的节点违反唯一约束后退出
+     */
+    private LocalDate backfillNextSnapshot(int period, LocalDate cutoff) {
+        LocalDate previous = stockSnapshotRepository.findLatestSnapshotDate();
+        LocalDate next = previous != null ? previous.plusDays(period) : firstSnapshotDate(period, cutoff);
+        if (next.isAfter(cutoff)) {
+            return null;
+        }
+        return saveSnapshot(next, rollForward(previous, next)) ? next : null;
+    }
+
+    /**
+     * 加锁后读取最近快照日期，写入最后一个快照周期；已补齐到目标日期、历史回填尚未完成或没有可写入的累计量时返回 null
+     * 多个节点同时执行时，后拿到锁的节点读到的是已提交的最新快照，不会重复写入同一日期
+     *
+     * @param verify 本次执行进行过不加锁的历史回填，需要按原始记录核对
+     */
+    private LocalDate writeNextSnapshot(int period, LocalDate target, boolean verify) {
+        // 先锁定库存投影，阻塞并发写入和其他节点的快照任务；锁释放后的写入以加锁读取看到本快照并自行回填
+        productStockRepository.lockAll();
+
+        LocalDate previous = stockSnapshotRepository.findLatestSnapshotDate();
+        LocalDate next = previous != null ? previous.plusDays(period) : firstSnapshotDate(period, target);
+        if (next.isAfter(target) || next.isBefore(target)) {
+            // 之前的周期由正在回填的节点（或下次检查）不加锁写入
+            return null;
+        }
+        Map<Long, CumulativeTotals> totals = rollForward(previous, next);
+        if (verify && previous != null) {
+            repairBackfill(previous, next, totals);
+        }
+        return saveSnapshot(next, totals) ? next : null;
+    }
+
+    /**
+     * 基于上一快照滚动计算快照日期的全部商品累计量，没有上一快照时汇总全部原始记录
+     */
+    private Map<Long, CumulativeTotals> rollForward(LocalDate previousDate, LocalDate snapshotDate) {
+        Map<Long, CumulativeTotals> totals = new HashMap<>();
+        if (previousDate == null) {
+            mergeInbound(totals, inboundRecordRepository.sumQuantityGroupByProductBeforeDate(snapshotDate));
+            mergeOutbound(totals, outboundRecordRepository.sumQuantityGroupByProductBeforeDate(snapshotDate));
+        } else {
+            for (Object[] row : stockSnapshotRepository.findTotalsBySnapshotDate(previousDate)) {
+                totals.put((Long) row[0], new CumulativeTotals((Integer) row[1], (Integer) row[2]));
+            }
+            mergeInbound(totals, inboundRecordRepository.sumQuantityGroupByProductBetween(previousDate, snapshotDate));
+            mergeOutbound(totals, outboundRecordRepository.sumQuantityGroupByProductBetween(previousDate, snapshotDate));
+        }
+        return totals;
+    }
+
+    /**
+     * 加锁后核对不加锁回填的结果：按原始记录汇总快照日期的累计量，与滚动计算结果不一致的商品
+     * 说明回填期间有并发的历史日期写入被漏计，按原始记录重写该商品的全部快照，并修正本次滚动计算结果
+     */
+    private void repairBackfill(LocalDate previousDate, LocalDate snapshotDate, Map<Long, CumulativeTotals> totals) {
+        Map<Long, CumulativeTotals> actual = new HashMap<>();
+        mergeInbound(actual, inboundRecordRepository.sumQuantityGroupByProductBeforeDate(snapshotDate));
+        mergeOutbound(actual, outboundRecordRepository.sumQuantityGroupByProductBeforeDate(snapshotDate));
+
+        Set<Long> mismatched = new HashSet<>(totals.keySet());
+        mismatched.addAll(actual.keySet());
+        mismatched.removeIf(productId -> Objects.equals(
+                totals.getOrDefault(productId, new CumulativeTotals(0, 0)),
+                actual.getOrDefault(productId, new CumulativeTotals(0, 0))));
+        mismatched.retainAll(new HashSet<>(productRepository.findAllIds()));
+        if (mismatched.isEmpty()) {
+            return;
+        }
+
+        List<LocalDate> snapshotDates = stockSnapshotRepository.findSnapshotDatesUpTo(previousDate);
+        for (Long productId : mismatched) {
+            stockSnapshotRepository.deleteByProductId(productId);
+            stockSnapshotRepository.saveAll(productHistory(productId, snapshotDates));
+        }
+        totals.clear();
+        totals.putAll(actual);
+        log.warn("历史快照回填期间有并发写入，已按原始记录修复的商品数: {}", mismatched.size());
+    }
+
+    /**
+     * 按原始记录计算单个商品在各快照日期的累计量（累计量为0的日期不写入）
+     */
+    private List<StockSnapshot> productHistory(Long productId, List<LocalDate> snapshotDates) {
+        TreeMap<LocalDate, int[]> daily = new TreeMap<>();
+        for (Object[] row : inboundRecordRepository.sumQuantityGroupByDateForProduct(productId)) {
+            daily.computeIfAbsent((LocalDate) row[0], date -> new int[2])[0] += ((Number) row[1]).intValue();
+        }
+        for (Object[] row : outboundRecordRepository.sumQuantityGroupByDateForProduct(productId)) {
+            daily.computeIfAbsent((LocalDate) row[0], date -> new int[2])[1] += ((Number) row[1]).intValue();
+        }
+
+        List<StockSnapshot> snapshots = new ArrayList<>();
+        int totalInbound = 0;
+        int totalOutbound = 0;
+        for (LocalDate snapshotDate : snapshotDates) {
+            while (!daily.isEmpty() && !daily.firstKey().isAfter(snapshotDate)) {
+                int[] quantities = daily.pollFirstEntry().getValue();
+                totalInbound += quantities[0];
+                totalOutbound += quantities[1];
+            }
+            if (totalInbound != 0 || totalOutbound != 0) {
+                StockSnapshot snapshot = new StockSnapshot();
+                snapshot.setProductId(productId);
+                snapshot.setSnapshotDate(snapshotDate);
+                snapshot.setTotalInbound(totalInbound);
+                snapshot.setTotalOutbound(totalOutbound);
+                snapshots.add(snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * 写入一个快照日期的全部商品累计量
+     *
+     * @return 是否写入了快照行；所有商品累计量都为0时不写入，最近快照日期不前进，调用方须停止滚动
+     */
+    private boolean saveSnapshot(LocalDate snapshotDate, Map<Long, CumulativeTotals> totals) {
+        // 累计量为0的商品不写入，查询时缺省按0处理
+        Set<Long> productIds = new HashSet<>(productRepository.findAllIds());
+        List<StockSnapshot> snapshots = new ArrayList<>();
+        totals.forEach((productId, total) -> {
+            if (productIds.contains(productId) && (total.getTotalInbound() != 0 || total.getTotalOutbound() != 0)) {
+                StockSnapshot snapshot = new StockSnapshot();
+                snapshot.setProductId(productId);
+                snapshot.setSnapshotDate(snapshotDate);
+                snapshot.setTotalInbound(total.getTotalInbound());
+                snapshot.setTotalOutbound(total.getTotalOutbound());
+                snapshots.add(snapshot);
+            }
+        });
+        stockSnapshotRepository.saveAll(snapshots);
+        return !snapshots.isEmpty();
+    }
+
+    /**
+     * 首次生成快照的日期：最早出入库日期所在周期，没有任何记录时直接从目标日期开始
+     */
+    private LocalDate firstSnapshotDate(int period, LocalDate target) {
+        LocalDate earliestIn = inboundRecordRepository.findEarliestInDate();
+        LocalDate earliestOut = outboundRecordRepository.findEarliestOutDate();
+        LocalDate earliest = earliestIn;
+        if (earliest == null || (earliestOut != null && earliestOut.isBefore(earliest))) {
+            earliest = earliestOut;
+        }
+        if (earliest == null || earliest.isAfter(target)) {
+            return target;
+        }
+        LocalDate aligned = alignDown(earliest, period);
+        return aligned.isBefore(earliest) ? aligned.plusDays(period) : aligned;
+    }
+
+    /**
+     * 快照日期按纪元日对齐到周期边界
+     */
+    private LocalDate alignDown(LocalDate date, int period) {
+        return date.minusDays(Math.floorMod(date.toEpochDay(), period));
+    }
+
+    private void mergeInbound(Map<Long, CumulativeTotals> totals, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            CumulativeTotals total = totals.computeIfAbsent((Long) row[0], id -> new CumulativeTotals(0, 0));
+            total.setTotalInbound(total.getTotalInbound() + ((Number) row[1]).intValue());
+        }
+    }
+
+    private void mergeOutbound(Map<Long, CumulativeTotals> totals, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            CumulativeTotals total = totals.computeIfAbsent((Long) row[0], id -> new CumulativeTotals(0, 0));
+            total.setTotalOutbound(total.getTotalOutbound() + ((Number) row[1]).intValue());
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.shelf.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shelf.repository.InboundRecordRepository;
+import com.shelf.repository.OutboundRecordRepository;
+import com.shelf.repository.ProductRepository;
+import com.shelf.util.FenwickTree;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品库存时间索引
+ * 每个商品按"距起始日期的天数"维护入库、出库两棵树状数组，O(log n) 回答截止某日的累计量和区间净变化量。
+ * 索引放在按内存权重限制的缓存中，长时间未访问或超出容量时淘汰；未加载的商品先走数据库查询，同时后台加载索引。
+ */
+@Slf4j
+@Service
+public class StockTimelineService implements DataChangeListener {
+
+    private final ProductRepository productRepository;
+    private final InboundRecordRepository inboundRecordRepository;
+    private final OutboundRecordRepository outboundRecordRepository;
+    private final StockSnapshotService stockSnapshotService;
+
+    private final Cache<Long, ProductTimeline> timelines;
+    private final ThreadPoolExecutor loader;
+    private final Set<Long> loading = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, WriteState> writeStates = new ConcurrentHashMap<>();
+
+    public StockTimelineService(ProductRepository productRepository,
+                                InboundRecordRepository inboundRecordRepository,
+                                OutboundRecordRepository outboundRecordRepository,
+                                StockSnapshotService stockSnapshotService,
+                                @Value("${stock.timeline.max-weight-bytes:67108864}") long maxWeightBytes,
+                                @Value("${stock.timeline.expire-after-access-minutes:60}") long expireMinutes,
+                                @Value("${stock.timeline.load-threads:2}") int loadThreads,
+                                @Value("${stock.timeline.load-queue-capacity:100}") int loadQueueCapacity) {
+        this.productRepository = productRepository;
+        this.inboundRecordRepository = inboundRecordRepository;
+        this.outboundRecordRepository = outboundRecordRepository;
+        this.stockSnapshotService = stockSnapshotService;
+        this.timelines = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((Long productId, ProductTimeline timeline) -> timeline.weight())
+                .expireAfterAccess(Duration.ofMinutes(expireMinutes))
+                .build();
+        AtomicInteger counter = new AtomicInteger();
+        this.loader = new ThreadPoolExecutor(Math.max(1, loadThreads), Math.max(1, loadThreads),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, loadQueueCapacity)), runnable -> {
+            Thread thread = new Thread(runnable, "stock-timeline-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    /**
+     * 查询商品截止到指定日期（含）的累计出入库数量
+     */
+    public StockSnapshotService.CumulativeTotals getTotalsAsOf(Long productId, LocalDate date) {
+        ProductTimeline timeline = timelines.getIfPresent(productId);
+        if (timeline != null) {
+            return timeline.totalsAsOf(date);
+        }
+        loadAsync(productId);
+        return stockSnapshotService.getTotalsAsOf(productId, date);
+    }
+
+    /**
+     * 查询商品在日期区间 [fromDate, toDate] 内的净变化量（入库 - 出库）
+     */
+    public long getNetMovement(Long productId, LocalDate fromDate, LocalDate toDate) {
+        ProductTimeline timeline = timelines.getIfPresent(productId);
+        if (timeline != null) {
+            return timeline.netMovement(fromDate, toDate);
+        }
+        loadAsync(productId);
+        if (fromDate.isAfter(toDate)) {
+            return 0L;
+        }
+        LocalDate exclusiveFrom = fromDate.minusDays(1);
+        return (long) inboundRecordRepository.sumQuantityByProductIdBetween(productId, exclusiveFrom, toDate)
+                - outboundRecordRepository.sumQuantityByProductIdBetween(productId, exclusiveFrom, toDate);
+    }
+
+    /**
+     * 记录出入库变化，事务提交后更新已加载的索引
+     * 事务进行期间该商品的索引不会被加载，避免加载结果与提交回调重复或遗漏；
+     * 索引在提交回调中最先更新，早于数据变化总线的分发（数据版本号递增之后不会再读到旧索引）
+     */
+    public void onMovement(Long productId, LocalDate date, int inboundDelta, int outboundDelta) {
+        if (date == null || (inboundDelta == 0 && outboundDelta == 0)) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            timelines.invalidate(productId);
+            return;
+        }
+        WriteState state = writeStates.computeIfAbsent(productId, id -> new WriteState());
+        state.inFlight.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCommit() {
+                timelines.asMap().computeIfPresent(productId, (id, timeline) ->
+                        timeline.add(date, inboundDelta, outboundDelta) ? timeline : null);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                state.sequence.incrementAndGet();
+                state.inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 本节点的变化已由 {@link #onMovement} 在提交时直接更新，这里无需处理
+     */
+    @Override
+    public void onChanges(Collection<ProductChange> changes) {
+    }
+
+    /**
+     * 其他节点的出入库变化：丢弃对应商品的索引，下次访问时重新加载
+     */
+    @Override
+    public void onRemoteChanges(Collection<ProductChange> changes) {
+        for (ProductChange change : changes) {
+            if (change.getEarliestMovementDate() != null || change.isRemoved()) {
+                // 推进写入序号，使正在进行的加载放弃结果
+                writeStates.computeIfAbsent(change.getProductId(), id -> new WriteState()).sequence.incrementAndGet();
+                timelines.invalidate(change.getProductId());
+            }
+        }
+    }
+
+    @Override
+    public void onReset() {
+        timelines.invalidateAll();
+    }
+
+    /**
+     * 删除商品时移除索引
+     */
+    public void removeProduct(Long productId) {
+        timelines.invalidate(productId);
+        writeStates.remove(productId);
+    }
+
+    /**
+     * 在有界线程池中后台加载商品索引，同一商品同时只加载一次；队列满时跳过，下次查询时再加载
+     */
+    private void loadAsync(Long productId) {
+        if (!loading.add(productId)) {
+            return;
+        }
+        try {
+            loader.execute(() -> {
+                try {
+                    load(productId);
+                } catch (Exception e) {
+                    log.warn("加载商品库存时间索引失败，商品ID: {}", productId, e);
+                } finally {
+                    loading.remove(productId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(productId);
+            log.debug("商品库存时间索引加载队列已满，商品ID: {}", productId);
+        }
+    }
+
+    private void load(Long productId) {
+        WriteState state = writeStates.computeIfAbsent(productId, id -> new WriteState());
+        long sequence = state.sequence.get();
+        if (state.inFlight.get() > 0) {
+            return;
+        }
+
+        LocalDateTime createdAt = productRepository.findCreatedAtById(productId);
+        if (createdAt == null) {
+            return;
+        }
+        List<Object[]> inboundRows = inboundRecordRepository.sumQuantityGroupByDateForProduct(productId);
+        List<Object[]> outboundRows = outboundRecordRepository.sumQuantityGroupByDateForProduct(productId);
+
+        // 起始日期取创建日期和最早出入库日期中较早的一个，容量覆盖到今天或最晚的出入库日期
+        long baseDay = createdAt.toLocalDate().toEpochDay();
+        long endDay = LocalDate.now().toEpochDay();
+        for (List<Object[]> rows : List.of(inboundRows, outboundRows)) {
+            for (Object[] row : rows) {
+                long day = ((LocalDate) row[0]).toEpochDay();
+                baseDay = Math.min(baseDay, day);
+                endDay = Math.max(endDay, day);
+            }
+        }
+
+        ProductTimeline timeline = new ProductTimeline(baseDay, (int) (endDay - baseDay + 1));
+        for (Object[] row : inboundRows) {
+            timeline.add((LocalDate) row[0], ((Number) row[1]).intValue(), 0);
+        }
+        for (Object[] row : outboundRows) {
+            timeline.add((LocalDate) row[0], 0, ((Number) row[1]).intValue());
+        }
+
+        // 与提交回调在同一个键上互斥：加载期间有写入开始或完成时放弃本次结果
+        timelines.asMap().computeIfAbsent(productId, id ->
+                state.inFlight.get() == 0 && state.sequence.get() == sequence ? timeline : null);
+    }
+
+    /**
+     * 单个商品的写入状态：进行中的事务数和已完成的写入序号
+     */
+    private static class WriteState {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong sequence = new AtomicLong();
+    }
+
+    /**
+     * 单个商品的时间索引，下标为距起始日期的天数
+     */
+    private static class ProductTimeline {
+
+        private final long baseDay;
+        private final FenwickTree inbound;
+        private final FenwickTree outbound;
+
+        ProductTimeline(long baseDay, int days) {
+            this.baseDay = baseDay;
+            this.inbound = new FenwickTree(days);
+            this.outbound = new FenwickTree(days);
+        }
+
+        /**
+         * 累加某天的变化量；日期早于起始日期时返回false，由调用方丢弃索引重新加载
+         */
+        synchronized boolean add(LocalDate date, int inboundDelta, int outboundDelta) {
+            long offset = date.toEpochDay() - baseDay;
+            if (offset < 0 || offset > Integer.MAX_VALUE - 1) {
+                return false;
+            }
+            int index = (int) offset;
+            if (index >= inbound.size()) {
+                int newSize = (int) Math.min(Integer.MAX_VALUE - 1L, Math.max(index + 1L, inbound.size() * 2L));
+                inbound.grow(newSize);
+                outbound.grow(newSize);
+            }
+            inbound.add(index, inboundDelta);
+            outbound.add(index, outboundDelta);
+            return true;
+        }
+
+        synchronized StockSnapshotService.CumulativeTotals totalsAsOf(LocalDate date) {
+            int index = toIndex(date);
+            return new StockSnapshotService.CumulativeTotals(
+                    (int) inbound.prefixSum(index), (int) outbound.prefixSum(index));
+        }
+
+        synchronized long netMovement(LocalDate fromDate, LocalDate toDate) {
+            int from = Math.max(0, toIndex(fromDate));
+            int to = toIndex(toDate);
+            return inbound.rangeSum(from, to) - outbound.rangeSum(from, to);
+        }
+
+        /**
+         * 估算占用字节数（两棵树状数组）
+         */
+        synchronized int weight() {
+            return (int) Math.min(Integer.MAX_VALUE, 64L + 16L * (inbound.size() + 1));
+        }
+
+        /**
+         * 日期转下标，早于起始日期时为-1，晚于容量时由前缀和按容量截断
+         */
+        private int toIndex(LocalDate date) {
+            long offset = date.toEpochDay() - baseDay;
+            return (int) Math.max(-1L, Math.min(offset, Integer.MAX_VALUE - 1L));
+        }
+    }
+}
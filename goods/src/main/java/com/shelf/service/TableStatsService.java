@@ -0,0 +1,52 @@
+package com.shelf.service;
+
+import com.shelf.config.SqlDialect;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 表行数估算
+ * PostgreSQL 下读取规划器统计（pg_class.reltuples，由 ANALYZE/autovacuum 维护），不扫描表；
+ * 其他数据库或表尚未收集统计时返回null，由调用方改用精确计数。
+ */
+@Slf4j
+@Service
+public class TableStatsService {
+
+    private final SqlDialect sqlDialect;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public TableStatsService(SqlDialect sqlDialect) {
+        this.sqlDialect = sqlDialect;
+    }
+
+    /**
+     * 估算表的行数，无法估算时返回null
+     */
+    public Long estimateRowCount(String table) {
+        if (sqlDialect != SqlDialect.POSTGRESQL) {
+            return null;
+        }
+        try {
+            List<?> rows = entityManager.createNativeQuery(
+                            "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE relname = :table AND relkind = 'r'")
+                    .setParameter("table", table)
+                    .getResultList();
+            if (rows.isEmpty() || rows.get(0) == null) {
+                return null;
+            }
+            long estimate = ((Number) rows.get(0)).longValue();
+            // 从未 ANALYZE 的表 reltuples 为 -1（PostgreSQL 14 起）
+            return estimate >= 0 ? estimate : null;
+        } catch (Exception e) {
+            log.warn("读取表行数估算失败，表: {}，原因: {}", table, e.getMessage());
+            return null;
+        }
+    }
+}
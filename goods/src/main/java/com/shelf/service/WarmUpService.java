@@ -0,0 +1,264 @@
+package com.shelf.service;
+
+import com.shelf.util.FieldSelection;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 启动预热
+ * 应用启动后依次填充连接池、加载内存库存索引、预取商品目录和统计缓存，再回放一组有代表性的内部请求（JIT 预热）；
+ * 全部阶段完成前就绪检查返回未就绪，负载均衡不会把用户请求转发过来。每个阶段记录耗时，单个阶段失败不影响后续阶段；
+ * 关键阶段（连接池、库存索引）失败时保持未就绪，定时重试失败的关键阶段，成功后才标记就绪。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WarmUpService {
+
+    private static final String CONNECTION_POOL = "connection-pool";
+    private static final String STOCK_INDEX = "stock-index";
+
+    private final DataSource dataSource;
+    private final StockIndexService stockIndexService;
+    private final ProductService productService;
+    private final OutboundRecordService outboundRecordService;
+    private final Environment environment;
+
+    @Value("${warmup.enabled:true}")
+    private boolean enabled;
+
+    /** 回放的内部请求路径，逗号分隔 */
+    @Value("${warmup.requests:/api/products?page=0&size=10,/api/stats/dashboard,/api/stock/date-range}")
+    private List<String> requests;
+
+    /** 每个请求回放次数 */
+    @Value("${warmup.request-iterations:3}")
+    private int requestIterations;
+
+    private final List<StageResult> stages = new CopyOnWriteArrayList<>();
+    private volatile boolean ready;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    /**
+     * 预热阶段结果
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StageResult {
+        private String name;
+        private long durationMs;
+        private boolean success;
+        private String error;
+    }
+
+    /**
+     * 执行全部预热阶段，完成后关键阶段都成功时标记就绪
+     */
+    public void warmUp() {
+        startedAt = LocalDateTime.now();
+        try {
+            if (!enabled) {
+                log.info("启动预热已关闭");
+                return;
+            }
+            stage(CONNECTION_POOL, this::fillConnectionPool);
+            stage(STOCK_INDEX, this::loadStockIndex);
+            stage("product-catalog", () -> {
+                productService.getAllProducts();
+                productService.getProducts(null, null, PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "createdAt")),
+                        FieldSelection.all());
+            });
+            stage("stats", () -> {
+                productService.getProductCount();
+                productService.getTotalStock();
+                productService.getStockValue();
+                outboundRecordService.getTotalOutboundQuantity(LocalDate.now(), LocalDate.now());
+            });
+            stage("requests", this::replayRequests);
+        } finally {
+            finishedAt = LocalDateTime.now();
+            List<String> failed = failedCriticalStages();
+            ready = failed.isEmpty();
+            if (ready) {
+                log.info("启动预热完成，耗时 {}ms", Duration.between(startedAt, finishedAt).toMillis());
+            } else {
+                log.warn("启动预热完成，耗时 {}ms，关键阶段失败: {}，保持未就绪并定时重试",
+                        Duration.between(startedAt, finishedAt).toMillis(), failed);
+            }
+        }
+    }
+
+    /**
+     * 预热结束后关键阶段仍有失败时定时重试失败的阶段，全部成功后标记就绪
+     */
+    @Scheduled(initialDelayString = "${warmup.retry-interval-ms:30000}",
+               fixedDelayString = "${warmup.retry-interval-ms:30000}")
+    public void retryCriticalStages() {
+        if (ready || finishedAt == null) {
+            return;
+        }
+        for (String name : failedCriticalStages()) {
+            stage(name, CONNECTION_POOL.equals(name) ? this::fillConnectionPool : this::loadStockIndex);
+        }
+        if (failedCriticalStages().isEmpty()) {
+            ready = true;
+            log.info("预热关键阶段重试成功，已标记就绪");
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 预热是否已执行完（不论是否就绪）
+     */
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    /**
+     * 最近一次执行结果为失败的关键阶段
+     */
+    public List<String> failedCriticalStages() {
+        Map<String, Boolean> latest = new LinkedHashMap<>();
+        for (StageResult stage : stages) {
+            latest.put(stage.getName(), stage.isSuccess());
+        }
+        List<String> failed = new ArrayList<>();
+        for (String name : List.of(CONNECTION_POOL, STOCK_INDEX)) {
+            if (Boolean.FALSE.equals(latest.get(name))) {
+                failed.add(name);
+            }
+        }
+        return failed;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public List<StageResult> getStages() {
+        return new ArrayList<>(stages);
+    }
+
+    private void stage(String name, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+            long durationMs = (System.nanoTime() - start) / 1_000_000;
+            stages.add(new StageResult(name, durationMs, true, null));
+            log.info("预热阶段 {} 完成，耗时 {}ms", name, durationMs);
+        } catch (Exception e) {
+            long durationMs = (System.nanoTime() - start) / 1_000_000;
+            stages.add(new StageResult(name, durationMs, false, e.getMessage()));
+            log.warn("预热阶段 {} 失败，耗时 {}ms", name, durationMs, e);
+        }
+    }
+
+    /**
+     * 加载内存库存索引，加载期间持续有提交导致仍未加载时视为失败
+     */
+    private void loadStockIndex() {
+        if (!stockIndexService.isLoaded()) {
+            stockIndexService.reload();
+        }
+        if (!stockIndexService.isLoaded()) {
+            throw new RuntimeException("内存库存索引未加载");
+        }
+    }
+
+    /**
+     * 同时借出最小空闲数量的连接，使连接池在接收用户请求之前建好连接
+     */
+    private void fillConnectionPool() {
+        int count = dataSource instanceof HikariDataSource hikari ? Math.max(1, hikari.getMinimumIdle()) : 1;
+        List<Connection> connections = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                connection.isValid(5);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("预热数据库连接失败: " + e.getMessage(), e);
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (Exception e) {
+                    log.debug("归还预热连接失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 通过本机 HTTP 回放内部请求，覆盖请求解析、序列化等完整链路
+     */
+    private void replayRequests() {
+        String port = environment.getProperty("local.server.port");
+        if (port == null || requests.isEmpty()) {
+            return;
+        }
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < requestIterations; i++) {
+            for (String path : requests) {
+                String trimmed = path.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                try {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + trimmed))
+                            .timeout(Duration.ofSeconds(30))
+                            .GET()
+                            .build();
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() >= 400) {
+                        failures.add(trimmed + " -> " + response.statusCode());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("预热请求被中断", e);
+                } catch (Exception e) {
+                    failures.add(trimmed + " -> " + e.getMessage());
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new RuntimeException("部分预热请求失败: " + failures);
+        }
+    }
+}
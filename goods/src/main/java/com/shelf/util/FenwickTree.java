@@ -0,0 +1,72 @@
+package com.shelf.util;
+
+/**
+ * 树状数组（Fenwick Tree），支持 O(log n) 单点累加和前缀和查询
+ * 下标从0开始；非线程安全，由调用方加锁
+ */
+public class FenwickTree {
+
+    /** tree[i] 保存区间 (i - lowbit(i), i] 的和，tree[0] 不使用 */
+    private long[] tree;
+
+    public FenwickTree(int size) {
+        tree = new long[Math.max(1, size) + 1];
+    }
+
+    /**
+     * 可容纳的下标数量
+     */
+    public int size() {
+        return tree.length - 1;
+    }
+
+    /**
+     * 下标 index 处累加 delta
+     */
+    public void add(int index, long delta) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("下标越界: " + index + "，容量: " + size());
+        }
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * 下标 [0, index] 的和，index 超出容量时按容量截断，小于0时返回0
+     */
+    public long prefixSum(int index) {
+        long sum = 0L;
+        for (int i = Math.min(index, size() - 1) + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 下标 [from, to] 的和
+     */
+    public long rangeSum(int from, int to) {
+        return from > to ? 0L : prefixSum(to) - prefixSum(from - 1);
+    }
+
+    /**
+     * 扩容到至少 newSize，已有数据保持不变
+     * 原有节点覆盖的区间不变；新节点的区间可能包含旧下标，按前缀和差值补齐
+     */
+    public void grow(int newSize) {
+        int oldSize = size();
+        if (newSize <= oldSize) {
+            return;
+        }
+        long[] grown = new long[newSize + 1];
+        System.arraycopy(tree, 0, grown, 0, tree.length);
+        for (int i = oldSize + 1; i <= newSize; i++) {
+            int low = i - (i & -i);
+            if (low < oldSize) {
+                grown[i] = prefixSum(oldSize - 1) - prefixSum(low - 1);
+            }
+        }
+        tree = grown;
+    }
+}
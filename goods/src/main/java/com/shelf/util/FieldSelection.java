@@ -0,0 +1,136 @@
+package com.shelf.util;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 列表接口的字段选择（fields=id,name,currentStock）
+ * 字段名为 DTO 属性名，只允许 DTO 已有的属性；选择了字段时只序列化这些字段，
+ * 服务层也据此跳过未选字段才需要的查询（关联商品、库存等）。未指定时返回全部字段。
+ */
+public class FieldSelection {
+
+    private static final FieldSelection ALL = new FieldSelection(null, Collections.emptyList());
+    private static final Map<Class<?>, Set<String>> PROPERTIES = new ConcurrentHashMap<>();
+
+    /** 选中的字段（按请求顺序），为空表示全部字段 */
+    private final Set<String> fields;
+    private final List<String> unsupported;
+
+    private FieldSelection(Set<String> fields, List<String> unsupported) {
+        this.fields = fields;
+        this.unsupported = unsupported;
+    }
+
+    /**
+     * 全部字段
+     */
+    public static FieldSelection all() {
+        return ALL;
+    }
+
+    /**
+     * 解析逗号分隔的字段列表，type 为列表元素的 DTO 类型
+     */
+    public static FieldSelection of(String fields, Class<?> type) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<String> properties = propertiesOf(type);
+        Set<String> selected = new LinkedHashSet<>();
+        List<String> unsupported = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (properties.contains(name)) {
+                selected.add(name);
+            } else {
+                unsupported.add(name);
+            }
+        }
+        return selected.isEmpty() && unsupported.isEmpty() ? ALL : new FieldSelection(selected, unsupported);
+    }
+
+    public boolean isAll() {
+        return fields == null;
+    }
+
+    /**
+     * 请求中不存在的字段名，非空时调用方应返回参数错误
+     */
+    public List<String> getUnsupported() {
+        return unsupported;
+    }
+
+    /**
+     * 是否需要返回指定字段中的任意一个
+     */
+    public boolean includesAny(String... names) {
+        if (fields == null) {
+            return true;
+        }
+        for (String name : names) {
+            if (fields.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只保留选中字段，未选择字段时原样返回 DTO
+     */
+    public Object apply(Object dto) {
+        if (fields == null || dto == null) {
+            return dto;
+        }
+        BeanWrapperImpl wrapper = new BeanWrapperImpl(dto);
+        Map<String, Object> values = new LinkedHashMap<>(fields.size() * 2);
+        for (String field : fields) {
+            values.put(field, wrapper.getPropertyValue(field));
+        }
+        return values;
+    }
+
+    public List<Object> apply(List<?> dtos) {
+        List<Object> result = new ArrayList<>(dtos.size());
+        for (Object dto : dtos) {
+            result.add(apply(dto));
+        }
+        return result;
+    }
+
+    public Page<Object> apply(Page<?> page) {
+        return page.map(this::apply);
+    }
+
+    public Slice<Object> apply(Slice<?> slice) {
+        return slice.map(this::apply);
+    }
+
+    private static Set<String> propertiesOf(Class<?> type) {
+        return PROPERTIES.computeIfAbsent(type, key -> {
+            Set<String> names = new LinkedHashSet<>();
+            for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(key)) {
+                if (descriptor.getReadMethod() != null && !"class".equals(descriptor.getName())) {
+                    names.add(descriptor.getName());
+                }
+            }
+            return names;
+        });
+    }
+}
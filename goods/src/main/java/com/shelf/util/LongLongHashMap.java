@@ -0,0 +1,189 @@
+package com.shelf.util;
+
+import java.util.Arrays;
+
+/**
+ * long -> long 开放寻址哈希表（线性探测）
+ * 键值均为基本类型，避免 HashMap<Long, Long> 的装箱和 Entry 对象开销；非线程安全，由调用方加锁
+ * int 值（库存、行号等）同样使用本类保存，不再为每种值类型复制一份实现
+ */
+public class LongLongHashMap {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** 键0作为空槽标记，真实的键0单独存放 */
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR) + 1) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * 查询键对应的值，不存在时返回默认值
+     */
+    public long get(long key, long defaultValue) {
+        if (key == 0L) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int slot = indexOf(key);
+        return slot >= 0 ? values[slot] : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0L ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * 写入键值，返回旧值（不存在时返回默认值）
+     */
+    public long put(long key, long value, long defaultValue) {
+        if (key == 0L) {
+            long previous = hasZeroKey ? zeroValue : defaultValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0L) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 删除键，返回旧值（不存在时返回默认值）
+     */
+    public long remove(long key, long defaultValue) {
+        if (key == 0L) {
+            if (!hasZeroKey) {
+                return defaultValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        long previous = values[slot];
+        // 向后移位删除：把后续探测链上的元素前移填补空槽，无需墓碑标记
+        int gap = slot;
+        int i = (slot + 1) & mask;
+        while (keys[i] != 0L) {
+            int ideal = hash(keys[i]) & mask;
+            if (((i - ideal) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[gap] = 0L;
+        values[gap] = 0;
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * 遍历所有键值对
+     */
+    public void forEach(EntryLongConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0L, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0L) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryLongConsumer {
+        void accept(long key, long value);
+    }
+
+    private int indexOf(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0L) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0L) {
+                int slot = hash(key) & mask;
+                while (keys[slot] != 0L) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * 自增ID分布很规整，先做一次混合再取低位，减少聚集
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
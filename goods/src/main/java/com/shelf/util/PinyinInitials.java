@@ -0,0 +1,63 @@
+package com.shelf.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * 汉字拼音首字母
+ * GB2312 一级汉字（3755 个常用字）按拼音排序，按编码区间即可确定首字母，不需要拼音字典；
+ * 二级汉字和 GB2312 以外的字没有首字母，跳过。字母和数字转小写后原样保留，其他字符跳过。
+ */
+public final class PinyinInitials {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    /** 各首字母在 GB2312 一级汉字中的起始编码，最后一项为一级汉字的结束位置 */
+    private static final int[] BOUNDARIES = {
+            0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7, 0xBFA6, 0xC0AC, 0xC2E8,
+            0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6, 0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9, 0xD4D1, 0xD7FA};
+    private static final char[] LETTERS = "abcdefghjklmnopqrstwxyz".toCharArray();
+
+    private PinyinInitials() {
+    }
+
+    /**
+     * 文本的拼音首字母串，如“红富士苹果”为 hfspg；没有可转换的字符时返回空字符串
+     */
+    public static String of(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder initials = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (Character.isLetterOrDigit(c)) {
+                    initials.append(Character.toLowerCase(c));
+                }
+                continue;
+            }
+            char initial = initialOf(c);
+            if (initial != 0) {
+                initials.append(initial);
+            }
+        }
+        return initials.toString();
+    }
+
+    private static char initialOf(char c) {
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return 0;
+        }
+        int code = (bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF);
+        if (code < BOUNDARIES[0] || code >= BOUNDARIES[BOUNDARIES.length - 1]) {
+            return 0;
+        }
+        for (int i = LETTERS.length - 1; i >= 0; i--) {
+            if (code >= BOUNDARIES[i]) {
+                return LETTERS[i];
+            }
+        }
+        return 0;
+    }
+}
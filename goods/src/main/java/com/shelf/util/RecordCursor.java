@@ -0,0 +1,56 @@
+package com.shelf.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * 出入库记录的游标分页位置：上一页最后一条记录的 (日期, ID)
+ * 记录按日期、ID倒序排列，下一页从该位置之后开始（seek），不使用 OFFSET。
+ * 对外为不透明的 URL 安全 base64 字符串。
+ */
+public class RecordCursor {
+
+    /** 第一页：位置在所有记录之前 */
+    public static final RecordCursor FIRST = new RecordCursor(LocalDate.of(9999, 12, 31), Long.MAX_VALUE);
+
+    private final LocalDate date;
+    private final Long id;
+
+    public RecordCursor(LocalDate date, Long id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String encode() {
+        String value = date + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，空字符串表示第一页，格式不正确时返回null
+     */
+    public static RecordCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int comma = value.indexOf(',');
+            if (comma < 0) {
+                return null;
+            }
+            return new RecordCursor(LocalDate.parse(value.substring(0, comma)), Long.parseLong(value.substring(comma + 1)));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}